@@ -0,0 +1,461 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Converts many files in one JVM. Each file is sent to the {@link Converter}
+ * method of its format, and the conversions run on an executor.
+ * 
+ * The number of files converted at the same time is limited per format, as
+ * docx (FOP) and pptx (slide drawing) need very different amounts of CPU and
+ * heap. Files of a format wait in a queue. Each file is converted by a task
+ * of its own, and a task that finishes submits the task of the next file of
+ * its format, so no more tasks of a format than its limit are ever
+ * submitted. Formats share the executor threads, and no thread waits for
+ * another format to drain or for a permit. A file that fails to convert is
+ * reported in its {@link ConversionResult} and does not stop the batch.
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class BatchConverter {
+
+	private ExecutorService executor;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private final Map<DocumentFormat, Integer> maxConcurrent = new EnumMap<DocumentFormat, Integer>(
+			DocumentFormat.class);
+
+	private File outputDir;
+	private String mainFontUsed;
+	private boolean outputColumnHeader = false;
+	private boolean outputRowNumber = false;
+	private ConversionCache cache;
+	private long timeoutMillis = -1;
+	private WorkerPool workerPool;
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @param executor
+	 *            Executor running the conversions, not shut down by the
+	 *            batch. If null, a pool of {@link #getThreads()} threads is
+	 *            created for each batch
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * @return maximum number of files of the format converted at the same
+	 *         time, defaults to the number of threads
+	 */
+	public int getMaxConcurrent(DocumentFormat format) {
+		Integer max = maxConcurrent.get(format);
+		return max != null ? max : threads;
+	}
+
+	public void setMaxConcurrent(DocumentFormat format, int max) {
+		if (max < 1) {
+			throw new IllegalArgumentException("max must be at least 1: " + max);
+		}
+		maxConcurrent.put(format, max);
+	}
+
+	public File getOutputDir() {
+		return outputDir;
+	}
+
+	/**
+	 * @param outputDir
+	 *            Directory the PDF files are written to. Files found by
+	 *            {@link #convertDirectory(File)} keep their path relative to
+	 *            the input directory. If null, each PDF is written next to
+	 *            its input
+	 */
+	public void setOutputDir(File outputDir) {
+		this.outputDir = outputDir;
+	}
+
+	public String getMainFontUsed() {
+		return mainFontUsed;
+	}
+
+	/**
+	 * @param mainFontUsed
+	 *            Main font of the docx files, see
+	 *            {@link Converter#docxToPDF(String, String, String)}
+	 */
+	public void setMainFontUsed(String mainFontUsed) {
+		this.mainFontUsed = mainFontUsed;
+	}
+
+	public boolean isOutputColumnHeader() {
+		return outputColumnHeader;
+	}
+
+	public void setOutputColumnHeader(boolean outputColumnHeader) {
+		this.outputColumnHeader = outputColumnHeader;
+	}
+
+	public boolean isOutputRowNumber() {
+		return outputRowNumber;
+	}
+
+	public void setOutputRowNumber(boolean outputRowNumber) {
+		this.outputRowNumber = outputRowNumber;
+	}
+
+	public ConversionCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @param cache
+	 *            Cache of converted PDFs, null to always convert
+	 */
+	public void setCache(ConversionCache cache) {
+		this.cache = cache;
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * @param timeoutMillis
+	 *            Time a single file may take, -1 for no limit. A file over
+	 *            time fails with {@link ConversionAbortedException} and the
+	 *            next file of its format is started
+	 */
+	public void setTimeoutMillis(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public WorkerPool getWorkerPool() {
+		return workerPool;
+	}
+
+	/**
+	 * @param workerPool
+	 *            Pool of worker JVMs to convert in, null to convert in this
+	 *            JVM. The deadline of the pool applies instead of
+	 *            {@link #setTimeoutMillis(long)}, and no cache is used. Have
+	 *            at least as many workers as files converted at the same time
+	 */
+	public void setWorkerPool(WorkerPool workerPool) {
+		this.workerPool = workerPool;
+	}
+
+	/**
+	 * Converts all supported files in a directory and its sub directories
+	 * 
+	 * @param inputDir
+	 *            The input directory
+	 * @return one result per file found
+	 * @throws InterruptedException
+	 */
+	public List<ConversionResult> convertDirectory(File inputDir) throws InterruptedException {
+		List<File> inputs = new ArrayList<File>();
+		collect(inputDir, inputs);
+		return convert(inputs, inputDir);
+	}
+
+	private static void collect(File dir, List<File> inputs) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.isDirectory()) {
+				collect(file, inputs);
+			} else if (DocumentFormat.fromFileName(file.getName()) != null) {
+				inputs.add(file);
+			}
+		}
+	}
+
+	/**
+	 * Converts the files. Inputs whose PDF would have the same path as the PDF
+	 * of an earlier input, e.g. report.docx and report.xlsx, fail instead of
+	 * overwriting it
+	 * 
+	 * @param inputs
+	 *            The input files
+	 * @return one result per input, in the order of the inputs
+	 * @throws InterruptedException
+	 */
+	public List<ConversionResult> convert(List<File> inputs) throws InterruptedException {
+		return convert(inputs, null);
+	}
+
+	/**
+	 * @param baseDir
+	 *            Directory the output paths are taken relative to, or null to
+	 *            put every PDF straight into the output directory
+	 */
+	private List<ConversionResult> convert(final List<File> inputs, File baseDir) throws InterruptedException {
+		final long batchStart = System.currentTimeMillis();
+		final ConversionResult[] results = new ConversionResult[inputs.size()];
+		final File[] outputs = new File[inputs.size()];
+		Map<File, File> claimed = new HashMap<File, File>();
+
+		//Queue the files by format
+		int queued = 0;
+		Map<DocumentFormat, Queue<Integer>> queues = new EnumMap<DocumentFormat, Queue<Integer>>(
+				DocumentFormat.class);
+		for (int i = 0; i < inputs.size(); i++) {
+			File input = inputs.get(i);
+			DocumentFormat format = DocumentFormat.fromFileName(input.getName());
+			if (format == null) {
+				results[i] = new ConversionResult(input, null, null, 0, 0,
+						new IllegalArgumentException("Unsupported file type: " + input));
+				continue;
+			}
+			outputs[i] = outputFile(input, baseDir);
+			File other = claimed.get(outputs[i].getAbsoluteFile());
+			if (other != null) {
+				results[i] = new ConversionResult(input, outputs[i], format, 0, 0,
+						new IllegalArgumentException("Output " + outputs[i] + " is already written for " + other));
+				continue;
+			}
+			claimed.put(outputs[i].getAbsoluteFile(), input);
+			Queue<Integer> queue = queues.get(format);
+			if (queue == null) {
+				queue = new ConcurrentLinkedQueue<Integer>();
+				queues.put(format, queue);
+			}
+			queue.add(i);
+			queued++;
+		}
+
+		if (outputDir != null) {
+			outputDir.mkdirs();
+		}
+
+		ExecutorService pool = executor != null ? executor : Executors.newFixedThreadPool(threads);
+		Batch batch = new Batch(pool, inputs, outputs, results, batchStart, queued);
+		try {
+			//Start as many files of each format as its limit allows, every
+			//finished file starts the next one
+			for (Map.Entry<DocumentFormat, Queue<Integer>> entry : queues.entrySet()) {
+				int running = Math.min(getMaxConcurrent(entry.getKey()), entry.getValue().size());
+				for (int r = 0; r < running; r++) {
+					batch.submitNext(entry.getKey(), entry.getValue());
+				}
+			}
+			batch.finished.await();
+		} finally {
+			//Nothing new is started after an interrupt
+			for (Queue<Integer> queue : queues.values()) {
+				queue.clear();
+			}
+			if (pool != executor) {
+				pool.shutdownNow();
+			}
+		}
+
+		int failed = 0;
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == null) {
+				// Not started, the executor was shut down
+				results[i] = new ConversionResult(inputs.get(i), outputs[i],
+						DocumentFormat.fromFileName(inputs.get(i).getName()), 0, 0,
+						new IllegalStateException("Not converted"));
+			}
+			if (!results[i].isSuccess()) {
+				failed++;
+			}
+		}
+		System.out.println("Converted " + (results.length - failed) + " of " + results.length + " files in "
+				+ (System.currentTimeMillis() - batchStart) + "ms");
+		return Collections.unmodifiableList(Arrays.asList(results));
+	}
+
+	/**
+	 * The files of one call to {@link BatchConverter#convert(List)} and their
+	 * results
+	 */
+	private class Batch {
+
+		private final ExecutorService pool;
+		private final List<File> inputs;
+		private final File[] outputs;
+		private final ConversionResult[] results;
+		private final long batchStart;
+		// Counted down once per queued file, converted or not
+		private final CountDownLatch finished;
+
+		Batch(ExecutorService pool, List<File> inputs, File[] outputs, ConversionResult[] results, long batchStart,
+				int queued) {
+			this.pool = pool;
+			this.inputs = inputs;
+			this.outputs = outputs;
+			this.results = results;
+			this.batchStart = batchStart;
+			this.finished = new CountDownLatch(queued);
+		}
+
+		/**
+		 * Submits the task converting the next file of a format, if any
+		 */
+		void submitNext(final DocumentFormat format, final Queue<Integer> queue) {
+			final Integer i = queue.poll();
+			if (i == null) {
+				return;
+			}
+			try {
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							results[i] = convert(inputs.get(i), outputs[i], format, batchStart);
+						} catch (Throwable t) {
+							// Failed outside the conversion, e.g. out of memory
+							results[i] = new ConversionResult(inputs.get(i), outputs[i], format, 0, 0, t);
+						} finally {
+							finished.countDown();
+						}
+						submitNext(format, queue);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// Executor shut down, the rest of the format is not converted
+				finished.countDown();
+				while (queue.poll() != null) {
+					finished.countDown();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Converts one file, catching every failure
+	 */
+	private ConversionResult convert(File input, File output, DocumentFormat format, long batchStart) {
+		long start = System.currentTimeMillis();
+		Throwable failure = null;
+		ConversionHandle handle = new ConversionHandle();
+		if (timeoutMillis >= 0) {
+			handle.setTimeoutMillis(timeoutMillis);
+		}
+		ConversionHandle previous = ConversionHandle.attach(handle);
+		try {
+			String inPath = input.getPath();
+			String outPath = output.getPath();
+			File outDir = output.getAbsoluteFile().getParentFile();
+			if (outDir != null) {
+				outDir.mkdirs();
+			}
+			if (workerPool != null) {
+				workerPool.convert(input, output, mainFontUsed, outputColumnHeader, outputRowNumber);
+			} else if (cache != null) {
+				convertCached(inPath, outPath, format);
+			} else {
+				switch (format) {
+					case DOCX:
+						Converter.docxToPDF(inPath, outPath, mainFontUsed);
+						break;
+					case XLS:
+						Converter.xlsToPDF(inPath, outPath);
+						break;
+					case XLSX:
+						Converter.xlsxToPDF(inPath, outPath, outputColumnHeader, outputRowNumber);
+						break;
+					case PPTX:
+						Converter.pptxToPDF(inPath, outPath);
+						break;
+				}
+			}
+		} catch (Throwable t) {
+			System.out.println("Failed: " + input + ": " + t);
+			failure = t;
+		} finally {
+			ConversionHandle.detach(previous);
+		}
+		return new ConversionResult(input, output, format, start - batchStart, System.currentTimeMillis() - start,
+				failure);
+	}
+
+	private void convertCached(String inPath, String outPath, DocumentFormat format) throws Exception {
+		switch (format) {
+			case DOCX:
+				cache.docxToPDF(inPath, outPath, mainFontUsed);
+				break;
+			case XLS:
+				cache.xlsToPDF(inPath, outPath);
+				break;
+			case XLSX:
+				cache.xlsxToPDF(inPath, outPath, outputColumnHeader, outputRowNumber);
+				break;
+			case PPTX:
+				cache.pptxToPDF(inPath, outPath, SlideRenderMode.PNG);
+				break;
+		}
+	}
+
+	private File outputFile(File input, File baseDir) {
+		String name = input.getName();
+		int dot = name.lastIndexOf('.');
+		name = (dot < 0 ? name : name.substring(0, dot)) + ".pdf";
+		File parent = input.getAbsoluteFile().getParentFile();
+		if (outputDir == null) {
+			return new File(parent, name);
+		}
+		if (baseDir == null) {
+			return new File(outputDir, name);
+		}
+		//Same sub directory under the output directory as under the input
+		//directory
+		String relative = baseDir.getAbsoluteFile().toPath().relativize(parent.toPath()).toString();
+		return new File(relative.isEmpty() ? outputDir : new File(outputDir, relative), name);
+	}
+}
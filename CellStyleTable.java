@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.model.ThemesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * CSS of every cell style of a workbook, in an array indexed by style index.
+ * 
+ * The CSS only depends on the styles and the theme of the workbook, so
+ * tables are cached by a digest of the raw bytes of both package parts.
+ * The parts are read once per loaded workbook. Only packages opened read
+ * only are cached: the parts of a workbook created or changed in memory do
+ * not match its styles, so its table is built without the cache. Workbooks
+ * created from the same template share their table, and the styles are only
+ * turned into CSS once per JVM.
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class CellStyleTable {
+
+	private static final int MAX_CACHED_TABLES = 64;
+
+	private static final Map<String, CellStyleTable> cache = new LinkedHashMap<String, CellStyleTable>(16, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CellStyleTable> eldest) {
+			return size() > MAX_CACHED_TABLES;
+		}
+	};
+
+	// Styles of a loaded workbook -> digest, so the parts are read once
+	private static final Map<StylesTable, String> digests = new WeakHashMap<StylesTable, String>();
+
+	private final String[] css;
+
+	private CellStyleTable(String[] css) {
+		this.css = css;
+	}
+
+	/**
+	 * @return number of cell styles
+	 */
+	public int size() {
+		return css.length;
+	}
+
+	/**
+	 * @param styleIndex
+	 *            Index of the cell style
+	 * @return CSS of the style, null if there is no such style
+	 */
+	public String getCss(int styleIndex) {
+		return styleIndex >= 0 && styleIndex < css.length ? css[styleIndex] : null;
+	}
+
+	/**
+	 * @param css
+	 *            CSS of each cell style index, null for no style. Not copied
+	 * @return a style table of the given CSS
+	 */
+	public static CellStyleTable of(String[] css) {
+		return new CellStyleTable(css);
+	}
+
+	/**
+	 * Returns the style table of a workbook, from the cache if a workbook with
+	 * the same styles was converted before
+	 * 
+	 * @param styles
+	 *            Styles of the workbook
+	 * @param converter
+	 *            Converter building the CSS of a style
+	 * @return the style table
+	 */
+	public static CellStyleTable of(StylesTable styles, XLSXToHTMLConverter converter) {
+		String key = digest(styles);
+		if (key == null) {
+			return build(styles, converter);
+		}
+		// Subclasses may build different CSS
+		key = converter.getClass().getName() + ":" + key;
+		synchronized (cache) {
+			CellStyleTable table = cache.get(key);
+			if (table != null) {
+				return table;
+			}
+		}
+		CellStyleTable table = build(styles, converter);
+		synchronized (cache) {
+			cache.put(key, table);
+		}
+		return table;
+	}
+
+	private static CellStyleTable build(StylesTable styles, XLSXToHTMLConverter converter) {
+		String[] css = new String[styles.getNumCellStyles()];
+		for (int i = 0; i < css.length; i++) {
+			XSSFCellStyle cellStyle = styles.getStyleAt(i);
+			if (cellStyle != null) {
+				css[i] = converter.buildStyle(cellStyle);
+			}
+		}
+		return new CellStyleTable(css);
+	}
+
+	/**
+	 * @return hex digest of the styles part and the theme part, null if the
+	 *         package is not read only or the parts cannot be read
+	 */
+	private static String digest(StylesTable styles) {
+		synchronized (digests) {
+			String digest = digests.get(styles);
+			if (digest != null) {
+				return digest;
+			}
+		}
+		PackagePart part = styles.getPackagePart();
+		if (part == null || part.getPackage().getPackageAccess() != PackageAccess.READ) {
+			return null;
+		}
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			update(md, part);
+			ThemesTable theme = styles.getTheme();
+			if (theme != null && theme.getPackagePart() != null) {
+				update(md, theme.getPackagePart());
+			}
+			StringBuilder hex = new StringBuilder();
+			for (byte b : md.digest()) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			String digest = hex.toString();
+			synchronized (digests) {
+				digests.put(styles, digest);
+			}
+			return digest;
+		} catch (IOException e) {
+			return null;
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	private static void update(MessageDigest md, PackagePart part) throws IOException {
+		InputStream in = part.getInputStream();
+		try {
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				md.update(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,361 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.util.XMLHelper;
+import org.w3c.dom.Document;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * {@link HtmlSink} splitting the output into several small DOM documents of
+ * at most a given number of table rows each. A finished document is handed
+ * to a {@link ChunkListener} before the next one is started, so only one
+ * chunk is in memory at a time. When a table continues in the next chunk,
+ * its column group and header row are repeated there. Row spans are cut at
+ * the end of a chunk, and the rest of the merged region starts the next
+ * chunk as an empty cell with the same class, so later cells keep their
+ * columns.
+ * 
+ * Every chunk gets all cell styles registered so far, in the same order, so
+ * class names are the same in every chunk.
+ * 
+ * A chunk is a fixed number of rows, not a page: rows are laid out only
+ * after the chunk is handed over, so a chunk can end anywhere on a page.
+ * 
+ * If the listener fails with a checked exception, the failure is kept,
+ * later rows are dropped and {@link #checkFailure()} throws it.
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class ChunkedHtmlSink implements HtmlSink {
+
+	/**
+	 * Receives the documents of a {@link ChunkedHtmlSink}
+	 */
+	public interface ChunkListener {
+
+		/**
+		 * @param chunk
+		 *            A complete HTML document. Not used by the sink afterwards
+		 * @param index
+		 *            0-based index of the chunk
+		 * @throws Exception
+		 */
+		void chunkReady(Document chunk, int index) throws Exception;
+	}
+
+	private final DocumentBuilder documentBuilder;
+	private final int rowsPerChunk;
+	private final ChunkListener listener;
+
+	// Every CSS rule registered so far as prefix and style, replayed into
+	// every chunk
+	private final Set<List<String>> cssClasses = new LinkedHashSet<List<String>>();
+
+	// First checked exception of the listener
+	private Exception failure;
+
+	private DomHtmlSink current;
+	private int chunkIndex;
+	private int chunkRows;
+	private boolean chunkHasContent;
+
+	// Table being written, to repeat its start in the next chunk
+	private boolean inTable;
+	private String tableClass;
+	private int[] columnWidths;
+	private int columnCount = -1;
+	private HtmlRow headerRow;
+
+	// Row of the current chunk whose cells cover each column, exclusive
+	private int[] coveredUntil = new int[64];
+	// Cells whose rows span past the end of the current chunk
+	private List<ContinuedCell> continued = new ArrayList<ContinuedCell>();
+	// Row passed to the chunk, with cut row spans and continued cells
+	private final HtmlRow laidOut = new HtmlRow();
+
+	/**
+	 * Rest of a merged region cut at the end of a chunk
+	 */
+	private static class ContinuedCell {
+
+		final int column;
+		final int colSpan;
+		final int rowSpan;
+		final String cssClass;
+
+		ContinuedCell(int column, int colSpan, int rowSpan, String cssClass) {
+			this.column = column;
+			this.colSpan = colSpan;
+			this.rowSpan = rowSpan;
+			this.cssClass = cssClass;
+		}
+	}
+
+	/**
+	 * @param rowsPerChunk
+	 *            Maximum number of table rows in a chunk
+	 * @param listener
+	 *            Receives the chunks
+	 * @throws ParserConfigurationException
+	 */
+	public ChunkedHtmlSink(int rowsPerChunk, ChunkListener listener) throws ParserConfigurationException {
+		if (rowsPerChunk < 1) {
+			throw new IllegalArgumentException("rowsPerChunk must be at least 1: " + rowsPerChunk);
+		}
+		this.documentBuilder = XMLHelper.getDocumentBuilderFactory().newDocumentBuilder();
+		this.rowsPerChunk = rowsPerChunk;
+		this.listener = listener;
+		this.current = new DomHtmlSink(documentBuilder.newDocument());
+	}
+
+	@Override
+	public String getOrCreateCssClass(String classNamePrefix, String style) {
+		cssClasses.add(Arrays.asList(classNamePrefix, style));
+		return current.getOrCreateCssClass(classNamePrefix, style);
+	}
+
+	/**
+	 * Column group and header row are repeated in every chunk, so they have
+	 * to be known before the first row
+	 */
+	@Override
+	public boolean requiresColumnsFirst() {
+		return true;
+	}
+
+	@Override
+	public void startDocument() {
+		current.startDocument();
+	}
+
+	@Override
+	public void writeSheetHeader(String sheetName) {
+		current.writeSheetHeader(sheetName);
+		chunkHasContent = true;
+	}
+
+	@Override
+	public void startTable(String cssClass) {
+		current.startTable(cssClass);
+		inTable = true;
+		tableClass = cssClass;
+		columnWidths = null;
+		columnCount = -1;
+		headerRow = null;
+		chunkHasContent = true;
+		Arrays.fill(coveredUntil, 0);
+		continued.clear();
+	}
+
+	@Override
+	public void writeColumnGroup(int[] widths, int count) {
+		current.writeColumnGroup(widths, count);
+		columnWidths = widths.clone();
+		columnCount = count;
+	}
+
+	@Override
+	public void writeHeaderRow(HtmlRow row) {
+		current.writeHeaderRow(row);
+		headerRow = row;
+	}
+
+	@Override
+	public void startTableBody() {
+		current.startTableBody();
+	}
+
+	@Override
+	public void writeRow(String classNamePrefix, String style, HtmlRow row) {
+		if (failure != null) {
+			return;
+		}
+		if (chunkRows >= rowsPerChunk) {
+			nextChunk();
+		}
+		current.writeRow(classNamePrefix, style, layOut(row));
+		chunkRows++;
+	}
+
+	/**
+	 * Copies a row for the current chunk. Row spans are cut at the end of the
+	 * chunk. The first row of a chunk gets a cell for each region continued
+	 * from the previous chunk, in the columns the converter left out for it
+	 */
+	private HtmlRow layOut(HtmlRow row) {
+		List<ContinuedCell> continuing = Collections.emptyList();
+		if (chunkRows == 0 && !continued.isEmpty()) {
+			continuing = continued;
+			continued = new ArrayList<ContinuedCell>();
+			Collections.sort(continuing, new Comparator<ContinuedCell>() {
+				@Override
+				public int compare(ContinuedCell a, ContinuedCell b) {
+					return a.column - b.column;
+				}
+			});
+		}
+
+		laidOut.clear();
+		int column = 0;
+		int next = 0;
+		for (int i = 0; i < row.size(); i++) {
+			//Skip columns covered by rows above, continued regions take theirs
+			while (true) {
+				if (next < continuing.size() && continuing.get(next).column <= column) {
+					ContinuedCell cell = continuing.get(next++);
+					column = place(false, cell.cssClass, cell.colSpan, cell.rowSpan, null, column);
+				} else if (column < coveredUntil.length && coveredUntil[column] > chunkRows) {
+					column++;
+				} else {
+					break;
+				}
+			}
+			HtmlRow.Cell cell = row.get(i);
+			column = place(cell.isHeader(), cell.getCssClass(), cell.getColSpan(), cell.getRowSpan(), cell.getText(),
+					column);
+		}
+
+		//Regions continued right of the last cell, after empty cells up to
+		//their column
+		for (; next < continuing.size(); next++) {
+			ContinuedCell cell = continuing.get(next);
+			if (cell.column > column) {
+				laidOut.addCell().setColSpan(cell.column - column);
+				column = cell.column;
+			}
+			column = place(false, cell.cssClass, cell.colSpan, cell.rowSpan, null, column);
+		}
+		laidOut.commit();
+		return laidOut;
+	}
+
+	/**
+	 * Adds a cell at the given column, cutting its row span at the end of the
+	 * chunk
+	 * 
+	 * @return the column after the cell
+	 */
+	private int place(boolean header, String cssClass, int colSpan, int rowSpan, String text, int column) {
+		HtmlRow.Cell cell = header ? laidOut.addHeaderCell() : laidOut.addCell();
+		cell.setCssClass(cssClass);
+		cell.setColSpan(colSpan);
+		cell.setText(text);
+
+		int span = Math.min(rowSpan, rowsPerChunk - chunkRows);
+		cell.setRowSpan(span);
+		if (span > 1) {
+			if (column + colSpan > coveredUntil.length) {
+				coveredUntil = Arrays.copyOf(coveredUntil, Math.max(column + colSpan, coveredUntil.length * 2));
+			}
+			Arrays.fill(coveredUntil, column, column + colSpan, chunkRows + span);
+		}
+		if (rowSpan > span) {
+			continued.add(new ContinuedCell(column, colSpan, rowSpan - span, cssClass));
+		}
+		return column + colSpan;
+	}
+
+	@Override
+	public void endTable() {
+		current.endTable();
+		inTable = false;
+		headerRow = null;
+		continued.clear();
+	}
+
+	@Override
+	public void endDocument() {
+		if (chunkHasContent || chunkIndex == 0) {
+			emit();
+		}
+	}
+
+	/**
+	 * Hands the current chunk to the listener and starts the next one,
+	 * continuing the open table
+	 */
+	private void nextChunk() {
+		if (inTable) {
+			current.endTable();
+		}
+		emit();
+
+		current = new DomHtmlSink(documentBuilder.newDocument());
+		for (List<String> cssClass : cssClasses) {
+			current.getOrCreateCssClass(cssClass.get(0), cssClass.get(1));
+		}
+		current.startDocument();
+		chunkRows = 0;
+		chunkHasContent = false;
+		Arrays.fill(coveredUntil, 0);
+
+		if (inTable) {
+			current.startTable(tableClass);
+			if (columnWidths != null) {
+				current.writeColumnGroup(columnWidths, columnCount);
+			}
+			if (headerRow != null) {
+				current.writeHeaderRow(headerRow);
+			}
+			current.startTableBody();
+			chunkHasContent = true;
+		}
+	}
+
+	private void emit() {
+		current.endDocument();
+		if (failure != null) {
+			return;
+		}
+		try {
+			listener.chunkReady(current.getDocument(), chunkIndex++);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * @throws ChunkListenerException
+	 *             If the listener failed to take a chunk, with the listener's
+	 *             exception as cause
+	 */
+	public void checkFailure() throws ChunkListenerException {
+		if (failure != null) {
+			throw new ChunkListenerException(failure);
+		}
+	}
+}
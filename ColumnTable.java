@@ -0,0 +1,131 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Column widths and hidden flags of one sheet, read once from
+ * {@link SheetColumns} into plain arrays, so the row loop does not go through
+ * the column definitions of the sheet for every cell. The table grows as
+ * wider rows are seen, every column is read from the sheet only once.
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class ColumnTable {
+
+	private final SheetColumns columns;
+	private final BitSet hidden = new BitSet();
+	private final BitSet collapsed = new BitSet();
+	private int[] widthsPx;
+	private int size;
+
+	/**
+	 * @param columns
+	 *            Column properties of the sheet
+	 * @param initialColumns
+	 *            Number of columns to read right away
+	 */
+	public ColumnTable(SheetColumns columns, int initialColumns) {
+		this.columns = columns;
+		this.widthsPx = new int[Math.max(initialColumns, 16)];
+		ensureColumns(initialColumns);
+	}
+
+	/**
+	 * Reads the columns up to the given count, if not read yet
+	 */
+	public void ensureColumns(int count) {
+		if (count <= size) {
+			return;
+		}
+		if (count > widthsPx.length) {
+			widthsPx = Arrays.copyOf(widthsPx, Math.max(count, widthsPx.length * 2));
+		}
+		for (int c = size; c < count; c++) {
+			widthsPx[c] = XLSXToHTMLConverter.getColumnWidthInPx(columns.getColumnWidth(c));
+			if (columns.isColumnHidden(c)) {
+				hidden.set(c);
+			}
+		}
+		size = count;
+	}
+
+	/**
+	 * @param columnIndex
+	 *            0-based column index
+	 * @return if the column is hidden
+	 */
+	public boolean isHidden(int columnIndex) {
+		if (columnIndex >= size) {
+			ensureColumns(columnIndex + 1);
+		}
+		return hidden.get(columnIndex);
+	}
+
+	/**
+	 * Leaves columns out of the output, independent of their hidden flag
+	 * 
+	 * @param fromIndex
+	 *            First column to leave out
+	 * @param toIndex
+	 *            Column after the last one to leave out
+	 */
+	public void collapse(int fromIndex, int toIndex) {
+		collapsed.set(fromIndex, toIndex);
+	}
+
+	/**
+	 * @param columnIndex
+	 *            0-based column index
+	 * @return if the column was left out by {@link #collapse(int, int)}
+	 */
+	public boolean isCollapsed(int columnIndex) {
+		return collapsed.get(columnIndex);
+	}
+
+	/**
+	 * @param columnIndex
+	 *            0-based column index
+	 * @param outputHidden
+	 *            If hidden columns are written
+	 * @return if the column is left out of the output
+	 */
+	public boolean isSkipped(int columnIndex, boolean outputHidden) {
+		return (!outputHidden && isHidden(columnIndex)) || collapsed.get(columnIndex);
+	}
+
+	/**
+	 * @param columnIndex
+	 *            0-based column index
+	 * @return width of the column in pixels
+	 */
+	public int getWidthPx(int columnIndex) {
+		if (columnIndex >= size) {
+			ensureColumns(columnIndex + 1);
+		}
+		return widthsPx[columnIndex];
+	}
+}
@@ -0,0 +1,364 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Cache of finished PDFs in front of {@link Converter}, for inputs that are
+ * converted again and again.
+ * 
+ * A PDF is stored under the SHA-256 of the input bytes, the input format and
+ * the options that change the output. The store is a directory bounded by
+ * total size; the least recently used PDFs are deleted first. Which PDFs the
+ * directory holds, their sizes and their order of use are kept in memory,
+ * the order is also kept in the files' modified times so that it survives a
+ * restart. A hit copies the stored PDF with FileChannel.transferTo, which
+ * lets the OS copy without going through the JVM heap.
+ * 
+ * Several threads may use one cache. Two misses on the same key both convert,
+ * the last one stored wins
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class ConversionCache {
+
+	// Changes the keys of all stored PDFs, increase when conversion output changes
+	private static final String VERSION = "1";
+
+	private static final String SUFFIX = ".pdf";
+
+	private final File dir;
+	private final long maxBytes;
+
+	// Key -> size of the stored PDF, least recently used first
+	private final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long size;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Converts into the given output path, see {@link ConversionCache#convert}
+	 */
+	private interface Conversion {
+		void run(String outPath) throws Exception;
+	}
+
+	/**
+	 * @param dir
+	 *            Directory to store PDFs in, created if missing. PDFs already
+	 *            there are kept
+	 * @param maxBytes
+	 *            Maximum total size of the stored PDFs
+	 * @throws IOException
+	 */
+	public ConversionCache(File dir, long maxBytes) throws IOException {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+		}
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can not create cache directory: " + dir);
+		}
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		load();
+	}
+
+	/**
+	 * Builds the index from the files in the directory, oldest use first
+	 */
+	private void load() {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(".tmp")) {
+				// Left over by a process that died while storing
+				file.delete();
+			} else if (name.endsWith(SUFFIX)) {
+				index.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+				size += file.length();
+			}
+		}
+		evict(null);
+	}
+
+	public File getDir() {
+		return dir;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return total size of the stored PDFs
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Computes the key of a conversion
+	 * 
+	 * @param input
+	 *            The input file
+	 * @param format
+	 *            Format of the input
+	 * @param options
+	 *            Values of the options that change the output, in a fixed
+	 *            order
+	 * @return hex SHA-256 of the input bytes, the format and the options
+	 * @throws IOException
+	 */
+	public static String key(File input, DocumentFormat format, Object... options) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		FileChannel channel = new FileInputStream(input).getChannel();
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			channel.close();
+		}
+		StringBuilder suffix = new StringBuilder();
+		suffix.append('\0').append(VERSION).append('\0').append(format.name());
+		for (Object option : options) {
+			suffix.append('\0').append(option);
+		}
+		byte[] hash = digest.digest(suffix.toString().getBytes(StandardCharsets.UTF_8));
+		StringBuilder key = new StringBuilder(hash.length * 2);
+		for (byte b : hash) {
+			key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Copies the PDF stored under the key to the output
+	 * 
+	 * @return false if no PDF is stored under the key
+	 * @throws IOException
+	 */
+	public boolean copyTo(String key, File output) throws IOException {
+		synchronized (this) {
+			if (index.get(key) == null) {
+				return false;
+			}
+		}
+		File stored = new File(dir, key + SUFFIX);
+		FileInputStream in;
+		try {
+			in = new FileInputStream(stored);
+		} catch (IOException e) {
+			// Deleted by someone else
+			remove(key);
+			return false;
+		}
+		try {
+			FileChannel source = in.getChannel();
+			FileChannel target = new FileOutputStream(output).getChannel();
+			try {
+				long position = 0;
+				long count = source.size();
+				while (position < count) {
+					position += source.transferTo(position, count - position, target);
+				}
+			} finally {
+				target.close();
+			}
+		} finally {
+			in.close();
+		}
+		// Keep the order of use for the next start
+		stored.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Stores a copy of the PDF under the key. PDFs larger than the whole
+	 * cache are not stored
+	 * 
+	 * @throws IOException
+	 */
+	public void put(String key, File pdf) throws IOException {
+		long length = pdf.length();
+		if (length > maxBytes) {
+			return;
+		}
+		File stored = new File(dir, key + SUFFIX);
+		// Copy under a temporary name so readers never see a partial PDF
+		File tmp = File.createTempFile(key, ".tmp", dir);
+		try {
+			Files.copy(pdf.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmp.toPath(), stored.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+		synchronized (this) {
+			Long previous = index.put(key, length);
+			size += length - (previous != null ? previous : 0);
+			evict(key);
+		}
+	}
+
+	private synchronized void remove(String key) {
+		Long length = index.remove(key);
+		if (length != null) {
+			size -= length;
+		}
+	}
+
+	/**
+	 * Deletes least recently used PDFs until the cache fits, keeping the
+	 * given key
+	 */
+	private synchronized void evict(String keep) {
+		Iterator<Map.Entry<String, Long>> entries = index.entrySet().iterator();
+		while (size > maxBytes && entries.hasNext()) {
+			Map.Entry<String, Long> entry = entries.next();
+			if (entry.getKey().equals(keep)) {
+				continue;
+			}
+			new File(dir, entry.getKey() + SUFFIX).delete();
+			size -= entry.getValue();
+			entries.remove();
+		}
+	}
+
+	/**
+	 * Converts docx to pdf, see {@link Converter#docxToPDF(String, String, String)}
+	 * 
+	 * @throws Exception
+	 */
+	public void docxToPDF(final String inPath, String outPath, final String mainFontUsed) throws Exception {
+		convert(inPath, outPath, DocumentFormat.DOCX, new Conversion() {
+			@Override
+			public void run(String outPath) throws Exception {
+				Converter.docxToPDF(inPath, outPath, mainFontUsed);
+			}
+		}, mainFontUsed);
+	}
+
+	/**
+	 * Converts xls to pdf, see {@link Converter#xlsToPDF(String, String)}
+	 * 
+	 * @throws Exception
+	 */
+	public void xlsToPDF(final String inPath, String outPath) throws Exception {
+		convert(inPath, outPath, DocumentFormat.XLS, new Conversion() {
+			@Override
+			public void run(String outPath) throws Exception {
+				Converter.xlsToPDF(inPath, outPath);
+			}
+		});
+	}
+
+	/**
+	 * Converts xlsx to pdf, see
+	 * {@link Converter#xlsxToPDF(String, String, boolean, boolean)}
+	 * 
+	 * @throws Exception
+	 */
+	public void xlsxToPDF(final String inPath, String outPath, final boolean outputColumnHeader,
+			final boolean outputRowNumber) throws Exception {
+		convert(inPath, outPath, DocumentFormat.XLSX, new Conversion() {
+			@Override
+			public void run(String outPath) throws Exception {
+				Converter.xlsxToPDF(inPath, outPath, outputColumnHeader, outputRowNumber);
+			}
+		}, outputColumnHeader, outputRowNumber);
+	}
+
+	/**
+	 * Converts pptx to pdf, see
+	 * {@link Converter#pptxToPDF(String, String, SlideRenderMode)}
+	 * 
+	 * @throws Exception
+	 */
+	public void pptxToPDF(final String inPath, String outPath, final SlideRenderMode renderMode) throws Exception {
+		convert(inPath, outPath, DocumentFormat.PPTX, new Conversion() {
+			@Override
+			public void run(String outPath) throws Exception {
+				Converter.pptxToPDF(inPath, outPath, renderMode);
+			}
+		}, renderMode);
+	}
+
+	private void convert(String inPath, String outPath, DocumentFormat format, Conversion conversion,
+			Object... options) throws Exception {
+		outPath = Converter.pathValidator(inPath, outPath);
+		String key = key(new File(inPath), format, options);
+		if (copyTo(key, new File(outPath))) {
+			hits.incrementAndGet();
+			System.out.println("Saved: " + outPath + " (cached)");
+			return;
+		}
+		misses.incrementAndGet();
+		conversion.run(outPath);
+		put(key, new File(outPath));
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Records {@link ConversionEvent}s and {@link ConversionPhaseEvent}s for
+ * {@link ConversionMetrics}. The events need JFR (JDK 11 and later); this
+ * class is only loaded if JFR is there, so the metrics also work on older
+ * JVMs. Events are passed around as Object for the same reason
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+final class ConversionEvents {
+
+	private ConversionEvents() {
+	}
+
+	/**
+	 * @return true if the JVM has JFR
+	 */
+	static boolean isSupported() {
+		try {
+			Class.forName("jdk.jfr.Event", false, ConversionEvents.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	static Object beginConversion() {
+		ConversionEvent event = new ConversionEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endConversion(Object conversion, String document, DocumentFormat format, boolean succeeded,
+			long sheets, long rows, long cells, long slides, long pages) {
+		ConversionEvent event = (ConversionEvent) conversion;
+		event.end();
+		if (event.shouldCommit()) {
+			event.document = document;
+			event.format = format != null ? format.name() : null;
+			event.succeeded = succeeded;
+			event.sheets = sheets;
+			event.rows = rows;
+			event.cells = cells;
+			event.slides = slides;
+			event.pages = pages;
+			event.commit();
+		}
+	}
+
+	static Object beginPhase() {
+		ConversionPhaseEvent event = new ConversionPhaseEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endPhase(Object phase, String document, String name, long cpuTime, long allocated) {
+		ConversionPhaseEvent event = (ConversionPhaseEvent) phase;
+		event.end();
+		if (event.shouldCommit()) {
+			event.document = document;
+			event.phase = name;
+			event.cpuTime = cpuTime;
+			event.allocated = allocated;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,255 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Deadline, cancellation and size limits of a conversion.
+ * 
+ * The converters check the handle bound to the converting thread between
+ * rows, between slides and between layout and writing, and throw
+ * {@link ConversionAbortedException} once it is cancelled, past its deadline
+ * or over a limit. Unwinding releases the document, so the thread is free
+ * again within a row or a slide. Loading a whole workbook into memory, a
+ * single slide, the layout of one HTML document and FOP rendering are not
+ * interrupted; use the streaming paths for untrusted spreadsheets.
+ * 
+ * Pass a handle to one of the {@link Converter} methods taking one and
+ * cancel it from any thread:
+ * 
+ * <pre>
+ * ConversionHandle handle = new ConversionHandle();
+ * handle.setTimeoutMillis(60000);
+ * handle.setMaxCells(5000000);
+ * Converter.xlsxToPDF(inPath, outPath, true, true, true, 0, handle);
+ * </pre>
+ * 
+ * Other conversions see the handle once it is bound to the converting
+ * thread with {@link #attach(ConversionHandle)} and
+ * {@link #detach(ConversionHandle)}.
+ * 
+ * Limits count the whole conversion. Interrupting a converting thread has
+ * the same effect as {@link #cancel()}
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class ConversionHandle {
+
+	private static final ThreadLocal<ConversionHandle> current = new ThreadLocal<ConversionHandle>();
+
+	// System.nanoTime() of the deadline, only valid if hasDeadline
+	private volatile long deadlineNanos;
+	private volatile boolean hasDeadline;
+	private volatile boolean cancelled;
+
+	private long maxCells = -1;
+	private long maxSlides = -1;
+	private long maxPixelsPerSlide = -1;
+	private long maxPages = -1;
+
+	private final AtomicLong cells = new AtomicLong();
+	private final AtomicLong slides = new AtomicLong();
+	private final AtomicLong pages = new AtomicLong();
+
+	/**
+	 * Binds the handle to the calling thread
+	 * 
+	 * @return the handle the thread was bound to before, to pass to
+	 *         {@link #detach(ConversionHandle)}
+	 */
+	public static ConversionHandle attach(ConversionHandle handle) {
+		ConversionHandle previous = current.get();
+		current.set(handle);
+		return previous;
+	}
+
+	/**
+	 * Undoes {@link #attach(ConversionHandle)}
+	 */
+	public static void detach(ConversionHandle previous) {
+		if (previous == null) {
+			current.remove();
+		} else {
+			current.set(previous);
+		}
+	}
+
+	/**
+	 * @return the handle bound to the calling thread, null if none
+	 */
+	public static ConversionHandle current() {
+		return current.get();
+	}
+
+	/**
+	 * Checks the handle of the calling thread, if any
+	 * 
+	 * @throws ConversionAbortedException
+	 */
+	public static void checkCurrent() {
+		ConversionHandle handle = current.get();
+		if (handle != null) {
+			handle.check();
+		}
+	}
+
+	/**
+	 * Sets the deadline to the given time from now
+	 */
+	public void setTimeoutMillis(long timeoutMillis) {
+		deadlineNanos = System.nanoTime() + timeoutMillis * 1000000L;
+		hasDeadline = true;
+	}
+
+	/**
+	 * Aborts the conversion at its next check. May be called from any thread
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public long getMaxCells() {
+		return maxCells;
+	}
+
+	/**
+	 * @param maxCells
+	 *            Maximum number of spreadsheet cells read, -1 for no limit
+	 */
+	public void setMaxCells(long maxCells) {
+		this.maxCells = maxCells;
+	}
+
+	public long getMaxSlides() {
+		return maxSlides;
+	}
+
+	/**
+	 * @param maxSlides
+	 *            Maximum number of slides, -1 for no limit
+	 */
+	public void setMaxSlides(long maxSlides) {
+		this.maxSlides = maxSlides;
+	}
+
+	public long getMaxPixelsPerSlide() {
+		return maxPixelsPerSlide;
+	}
+
+	/**
+	 * @param maxPixelsPerSlide
+	 *            Maximum width times height of a slide, -1 for no limit
+	 */
+	public void setMaxPixelsPerSlide(long maxPixelsPerSlide) {
+		this.maxPixelsPerSlide = maxPixelsPerSlide;
+	}
+
+	public long getMaxPages() {
+		return maxPages;
+	}
+
+	/**
+	 * @param maxPages
+	 *            Maximum number of output pages of HTML rendered documents
+	 *            (spreadsheets), -1 for no limit. Checked after layout, before
+	 *            the pages are written. Slide shows have one page per slide
+	 */
+	public void setMaxPages(long maxPages) {
+		this.maxPages = maxPages;
+	}
+
+	/**
+	 * @throws ConversionAbortedException
+	 *             If cancelled, interrupted or past the deadline
+	 */
+	public void check() {
+		if (cancelled || Thread.currentThread().isInterrupted()) {
+			throw new ConversionAbortedException(ConversionAbortedException.Reason.CANCELLED,
+					"Conversion cancelled");
+		}
+		if (hasDeadline && System.nanoTime() - deadlineNanos > 0) {
+			throw new ConversionAbortedException(ConversionAbortedException.Reason.DEADLINE,
+					"Conversion deadline exceeded");
+		}
+	}
+
+	/**
+	 * Counts cells read and checks the handle
+	 * 
+	 * @throws ConversionAbortedException
+	 */
+	public void addCells(long count) {
+		check();
+		long total = cells.addAndGet(count);
+		if (maxCells >= 0 && total > maxCells) {
+			throw new ConversionAbortedException(ConversionAbortedException.Reason.CELLS,
+					"Document has more than " + maxCells + " cells");
+		}
+	}
+
+	/**
+	 * Counts a slide and checks the handle
+	 * 
+	 * @throws ConversionAbortedException
+	 */
+	public void addSlide() {
+		check();
+		long total = slides.incrementAndGet();
+		if (maxSlides >= 0 && total > maxSlides) {
+			throw new ConversionAbortedException(ConversionAbortedException.Reason.SLIDES,
+					"Document has more than " + maxSlides + " slides");
+		}
+	}
+
+	/**
+	 * Checks the size of the slides before they are drawn
+	 * 
+	 * @throws ConversionAbortedException
+	 */
+	public void checkSlideSize(int width, int height) {
+		if (maxPixelsPerSlide >= 0 && (long) width * height > maxPixelsPerSlide) {
+			throw new ConversionAbortedException(ConversionAbortedException.Reason.SLIDE_PIXELS,
+					"Slides of " + width + "x" + height + " exceed " + maxPixelsPerSlide + " pixels");
+		}
+	}
+
+	/**
+	 * Counts laid out pages and checks the handle
+	 * 
+	 * @throws ConversionAbortedException
+	 */
+	public void addPages(long count) {
+		check();
+		long total = pages.addAndGet(count);
+		if (maxPages >= 0 && total > maxPages) {
+			throw new ConversionAbortedException(ConversionAbortedException.Reason.PAGES,
+					"Document has more than " + maxPages + " pages");
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Receives the measurements of conversions, see
+ * {@link ConversionMetrics#addListener(ConversionListener)}. Called on the
+ * converting threads, so implementations must be thread safe and quick
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public interface ConversionListener {
+
+	/**
+	 * Called when a phase of a conversion ended, on the thread that ran it
+	 * 
+	 * @param conversion
+	 *            The conversion, still running
+	 * @param phase
+	 *            Name of the phase, e.g. "load", "layout"
+	 * @param wallNanos
+	 *            Elapsed time
+	 * @param cpuNanos
+	 *            CPU time of the thread, -1 if not supported by the JVM
+	 * @param allocatedBytes
+	 *            Bytes allocated by the thread, -1 if not supported by the JVM
+	 */
+	void phaseEnded(ConversionMetrics conversion, String phase, long wallNanos, long cpuNanos, long allocatedBytes);
+
+	/**
+	 * Called once when a conversion ended, with its totals and counters
+	 */
+	void conversionEnded(ConversionMetrics conversion);
+}
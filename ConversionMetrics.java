@@ -0,0 +1,389 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Measurements of one conversion: time, CPU time and allocated bytes per
+ * phase, and counters of the document's sheets, rows, cells, slides and
+ * pages.
+ * 
+ * A conversion is bound to the thread that started it; code further down
+ * finds it with {@link #current()}, so the converters do not pass it
+ * around. Worker threads {@link #attach(ConversionMetrics) attach} to it.
+ * Every phase and conversion is handed to the registered
+ * {@link ConversionListener}s and, on JVMs with JFR, recorded as a JFR event
+ * ({@link ConversionPhaseEvent}, {@link ConversionEvent}).
+ * 
+ * Phases are measured on the thread running them. A phase that hands work
+ * to other threads only accounts for its own thread; the workers' phases
+ * are reported separately
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class ConversionMetrics {
+
+	private static final ThreadLocal<ConversionMetrics> current = new ThreadLocal<ConversionMetrics>();
+
+	private static final List<ConversionListener> listeners = new CopyOnWriteArrayList<ConversionListener>();
+
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private static final boolean cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported()
+			&& threadBean.isThreadCpuTimeEnabled();
+	private static final com.sun.management.ThreadMXBean allocationBean = threadBean instanceof com.sun.management.ThreadMXBean
+			&& ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemoryEnabled()
+					? (com.sun.management.ThreadMXBean) threadBean : null;
+	// JFR classes are only touched through ConversionEvents if this is set
+	private static final boolean eventsSupported = ConversionEvents.isSupported();
+
+	private final String document;
+	private final DocumentFormat format;
+	private final long startNanos = System.nanoTime();
+	// ConversionEvent, null without JFR
+	private Object event;
+
+	private final AtomicLong sheets = new AtomicLong();
+	private final AtomicLong rows = new AtomicLong();
+	private final AtomicLong cells = new AtomicLong();
+	private final AtomicLong slides = new AtomicLong();
+	private final AtomicLong pages = new AtomicLong();
+
+	// Totals per phase name, in order of first use
+	private final Map<String, PhaseTotal> phases = new LinkedHashMap<String, PhaseTotal>();
+
+	// Nesting of begin() on the starting thread, see begin()
+	private int depth;
+	private volatile boolean succeeded;
+	private volatile long wallNanos = -1;
+
+	private ConversionMetrics(String document, DocumentFormat format) {
+		this.document = document;
+		this.format = format;
+	}
+
+	public static void addListener(ConversionListener listener) {
+		listeners.add(listener);
+	}
+
+	public static void removeListener(ConversionListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Starts a conversion on the calling thread. If a conversion is already
+	 * running on it, e.g. an overload calling another, that conversion is
+	 * returned and the call only nests
+	 * 
+	 * @param document
+	 *            Input path, or a description of a stream
+	 * @param format
+	 *            Input format
+	 * @return the conversion, {@link #end()} it in a finally block
+	 */
+	public static ConversionMetrics begin(String document, DocumentFormat format) {
+		ConversionMetrics metrics = current.get();
+		if (metrics == null) {
+			metrics = new ConversionMetrics(document, format);
+			if (eventsSupported) {
+				metrics.event = ConversionEvents.beginConversion();
+			}
+			current.set(metrics);
+		}
+		metrics.depth++;
+		return metrics;
+	}
+
+	/**
+	 * @return the conversion of the calling thread, null if none
+	 */
+	public static ConversionMetrics current() {
+		return current.get();
+	}
+
+	/**
+	 * Binds a conversion started on another thread to the calling worker
+	 * thread
+	 * 
+	 * @return the conversion the thread was bound to before, to pass to
+	 *         {@link #detach(ConversionMetrics)}
+	 */
+	public static ConversionMetrics attach(ConversionMetrics metrics) {
+		ConversionMetrics previous = current.get();
+		current.set(metrics);
+		return previous;
+	}
+
+	/**
+	 * Undoes {@link #attach(ConversionMetrics)}
+	 */
+	public static void detach(ConversionMetrics previous) {
+		if (previous == null) {
+			current.remove();
+		} else {
+			current.set(previous);
+		}
+	}
+
+	/**
+	 * Marks the conversion as successful, call before the last
+	 * {@link #end()}
+	 */
+	public void succeeded() {
+		succeeded = true;
+	}
+
+	/**
+	 * Ends the conversion when called as often as begin()
+	 */
+	public void end() {
+		if (--depth > 0) {
+			return;
+		}
+		current.remove();
+		wallNanos = System.nanoTime() - startNanos;
+		if (event != null) {
+			ConversionEvents.endConversion(event, document, format, succeeded, sheets.get(), rows.get(), cells.get(),
+					slides.get(), pages.get());
+		}
+		for (ConversionListener listener : listeners) {
+			listener.conversionEnded(this);
+		}
+	}
+
+	/**
+	 * Starts a phase on the calling thread, for the conversion bound to it if
+	 * any
+	 * 
+	 * @param name
+	 *            Name of the phase
+	 * @return the phase, {@link Phase#end()} it in a finally block
+	 */
+	public static Phase startPhase(String name) {
+		return new Phase(current.get(), name);
+	}
+
+	private static long cpuTime() {
+		return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : -1;
+	}
+
+	private static long allocatedBytes() {
+		return allocationBean != null ? allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+	}
+
+	/**
+	 * A running phase
+	 */
+	public static final class Phase {
+
+		private final ConversionMetrics conversion;
+		private final String name;
+		// ConversionPhaseEvent, null without JFR
+		private final Object event;
+		private final long startNanos;
+		private final long startCpu;
+		private final long startAllocated;
+
+		private Phase(ConversionMetrics conversion, String name) {
+			this.conversion = conversion;
+			this.name = name;
+			event = eventsSupported ? ConversionEvents.beginPhase() : null;
+			startAllocated = allocatedBytes();
+			startCpu = cpuTime();
+			startNanos = System.nanoTime();
+		}
+
+		public void end() {
+			long wall = System.nanoTime() - startNanos;
+			long cpu = startCpu < 0 ? -1 : cpuTime() - startCpu;
+			long allocated = startAllocated < 0 ? -1 : allocatedBytes() - startAllocated;
+			if (event != null) {
+				ConversionEvents.endPhase(event, conversion != null ? conversion.document : null, name, cpu,
+						allocated);
+			}
+			if (conversion != null) {
+				conversion.addPhase(name, wall, cpu, allocated);
+				for (ConversionListener listener : listeners) {
+					listener.phaseEnded(conversion, name, wall, cpu, allocated);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sum of all runs of a phase in one conversion
+	 */
+	public static final class PhaseTotal {
+
+		private final String name;
+		private long count;
+		private long wallNanos;
+		private long cpuNanos;
+		private long allocatedBytes;
+
+		private PhaseTotal(String name) {
+			this.name = name;
+		}
+
+		private PhaseTotal(PhaseTotal other) {
+			this.name = other.name;
+			this.count = other.count;
+			this.wallNanos = other.wallNanos;
+			this.cpuNanos = other.cpuNanos;
+			this.allocatedBytes = other.allocatedBytes;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return how often the phase ran, e.g. once per slide
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		public long getWallNanos() {
+			return wallNanos;
+		}
+
+		/**
+		 * @return CPU time, -1 if not supported by the JVM
+		 */
+		public long getCpuNanos() {
+			return cpuNanos;
+		}
+
+		/**
+		 * @return allocated bytes, -1 if not supported by the JVM
+		 */
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": " + count + "x, " + wallNanos / 1000000 + "ms wall, " + cpuNanos / 1000000
+					+ "ms cpu, " + allocatedBytes / 1024 + "KB allocated";
+		}
+	}
+
+	private synchronized void addPhase(String name, long wall, long cpu, long allocated) {
+		PhaseTotal total = phases.get(name);
+		if (total == null) {
+			total = new PhaseTotal(name);
+			phases.put(name, total);
+		}
+		total.count++;
+		total.wallNanos += wall;
+		total.cpuNanos = cpu < 0 || total.cpuNanos < 0 ? -1 : total.cpuNanos + cpu;
+		total.allocatedBytes = allocated < 0 || total.allocatedBytes < 0 ? -1 : total.allocatedBytes + allocated;
+	}
+
+	public String getDocument() {
+		return document;
+	}
+
+	public DocumentFormat getFormat() {
+		return format;
+	}
+
+	public boolean isSucceeded() {
+		return succeeded;
+	}
+
+	/**
+	 * @return elapsed time of the whole conversion, -1 while it runs
+	 */
+	public long getWallNanos() {
+		return wallNanos;
+	}
+
+	/**
+	 * @return totals of each phase so far, in order of first use
+	 */
+	public synchronized List<PhaseTotal> getPhases() {
+		List<PhaseTotal> copy = new ArrayList<PhaseTotal>(phases.size());
+		for (PhaseTotal total : phases.values()) {
+			copy.add(new PhaseTotal(total));
+		}
+		return Collections.unmodifiableList(copy);
+	}
+
+	public long getSheets() {
+		return sheets.get();
+	}
+
+	public long getRows() {
+		return rows.get();
+	}
+
+	public long getCells() {
+		return cells.get();
+	}
+
+	public long getSlides() {
+		return slides.get();
+	}
+
+	public long getPages() {
+		return pages.get();
+	}
+
+	public void addSheets(long count) {
+		sheets.addAndGet(count);
+	}
+
+	public void addRows(long count) {
+		rows.addAndGet(count);
+	}
+
+	public void addCells(long count) {
+		cells.addAndGet(count);
+	}
+
+	public void addSlides(long count) {
+		slides.addAndGet(count);
+	}
+
+	public void addPages(long count) {
+		pages.addAndGet(count);
+	}
+
+	@Override
+	public String toString() {
+		return document + " (" + format + "): " + (wallNanos < 0 ? "running" : wallNanos / 1000000 + "ms") + ", "
+				+ sheets + " sheets, " + rows + " rows, " + cells + " cells, " + slides + " slides, " + pages
+				+ " pages, phases " + getPhases();
+	}
+}
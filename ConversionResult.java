@@ -0,0 +1,100 @@
+import java.io.File;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Outcome of converting one file in a {@link BatchConverter} batch
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class ConversionResult {
+
+	private final File input;
+	private final File output;
+	private final DocumentFormat format;
+	private final long queuedMillis;
+	private final long elapsedMillis;
+	private final Throwable failure;
+
+	ConversionResult(File input, File output, DocumentFormat format, long queuedMillis, long elapsedMillis,
+			Throwable failure) {
+		this.input = input;
+		this.output = output;
+		this.format = format;
+		this.queuedMillis = queuedMillis;
+		this.elapsedMillis = elapsedMillis;
+		this.failure = failure;
+	}
+
+	public File getInput() {
+		return input;
+	}
+
+	public File getOutput() {
+		return output;
+	}
+
+	/**
+	 * @return format of the input, null if not supported
+	 */
+	public DocumentFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return time between the start of the batch and the start of this
+	 *         conversion
+	 */
+	public long getQueuedMillis() {
+		return queuedMillis;
+	}
+
+	/**
+	 * @return time spent converting this file
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return why the conversion failed, null if it succeeded
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	public boolean isSuccess() {
+		return failure == null;
+	}
+
+	@Override
+	public String toString() {
+		if (isSuccess()) {
+			return input + " -> " + output + " (" + elapsedMillis + "ms)";
+		}
+		return input + " FAILED after " + elapsedMillis + "ms: " + failure;
+	}
+}
@@ -1,44 +1,33 @@
-import java.awt.Color;
-import java.awt.Dimension;
-import java.awt.Graphics2D;
-import java.awt.geom.Rectangle2D;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Iterator;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.ImageOutputStream;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 
 import org.apache.poi.hssf.converter.ExcelToHtmlConverter;
-import org.apache.poi.xslf.usermodel.XMLSlideShow;
-import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.poi.hssf.converter.ExcelToHtmlUtils;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.util.XMLHelper;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.docx4j.Docx4J;
-import org.docx4j.convert.out.FOSettings;
-import org.docx4j.fonts.IdentityPlusMapper;
-import org.docx4j.fonts.Mapper;
-import org.docx4j.fonts.PhysicalFont;
-import org.docx4j.fonts.PhysicalFonts;
 import org.docx4j.model.fields.FieldUpdater;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
 import org.w3c.dom.Document;
 import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xml.sax.SAXException;
 
 import com.lowagie.text.DocumentException;
-import com.lowagie.text.Image;
-import com.lowagie.text.Rectangle;
-import com.lowagie.text.pdf.BaseFont;
-import com.lowagie.text.pdf.PdfPCell;
-import com.lowagie.text.pdf.PdfPTable;
-import com.lowagie.text.pdf.PdfWriter;
 
 /*
  * MIT License
@@ -80,7 +69,8 @@ import com.lowagie.text.pdf.PdfWriter;
 public class Converter {
 
 	/**
-	 * Converts .docx files to pdf
+	 * Converts .docx files to pdf. Several documents can be converted at the
+	 * same time from different threads
 	 * 
 	 * @param inPath
 	 *            The input file path
@@ -94,55 +84,135 @@ public class Converter {
 	 * @throws Exception 
 	 */
 	public static void docxToPDF(String inPath, String outPath, String mainFontUsed) throws Exception {
-		WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.load(new File(inPath));
+		ConversionMetrics metrics = ConversionMetrics.begin(inPath, DocumentFormat.DOCX);
+		try {
+			ConversionMetrics.Phase phase = ConversionMetrics.startPhase("load");
+			WordprocessingMLPackage wordMLPackage;
+			try {
+				wordMLPackage = WordprocessingMLPackage.load(new File(inPath));
+			} finally {
+				phase.end();
+			}
 		
-		//TODO: Support Chinese font
-		//Set up font mapper
-		String regex;
-		regex =".*(Courier New|Arial|Times New Roman|Comic Sans|Georgia|Impact|Lucida Console|Lucida Sans Unicode|Palatino Linotype|Tahoma|Trebuchet|Verdana|Symbol|Webdings|Wingdings|MS Sans Serif|MS Serif|).*";
-		PhysicalFonts.setRegex(regex);
-	    Mapper fontMapper = new IdentityPlusMapper();
-	    wordMLPackage.setFontMapper(fontMapper);
-	    PhysicalFonts.discoverPhysicalFonts();
-	    PhysicalFont font = PhysicalFonts.get("Arial Unicode MS");
-	    System.out.println(font);
-	    if (font!=null) {
-	    	fontMapper.put("Times New Roman", font);
-	        fontMapper.put("Arial", font);
-	        fontMapper.put("Calibri", font);
-	        fontMapper.put("Helvetica", font);
-	        fontMapper.put("等线", font);
-	        fontMapper.put("宋体", font);
-	        if(mainFontUsed != null){
-	        	fontMapper.put(mainFontUsed, font);
-	        }
-	    }
-	    fontMapper.put("Libian SC Regular", PhysicalFonts.get("SimSun"));
-	   
-		// Refresh the values of DOCPROPERTY fields
-		FieldUpdater updater = new FieldUpdater(wordMLPackage);
-		updater.update(true);
-
-		// Validate outPath
-		outPath = pathValidator(inPath, outPath);
-
-		// Setup
-		FOSettings foSettings = Docx4J.createFOSettings();
-		foSettings.setWmlPackage(wordMLPackage);
-
-		// Output
-		OutputStream out = new FileOutputStream(outPath);
-		Docx4J.toFO(foSettings, out, Docx4J.FLAG_EXPORT_PREFER_XSL);
-		System.out.println("Saved: " + outPath);
+			//TODO: Support Chinese font
+			//Set up font mapper, fonts are discovered once per JVM and the
+			//mapper belongs to this document only
+			phase = ConversionMetrics.startPhase("fonts");
+			try {
+				FontCache.getInstance().createMapper(wordMLPackage, mainFontUsed);
+			} finally {
+				phase.end();
+			}
+
+			// Refresh the values of DOCPROPERTY fields
+			FieldUpdater updater = new FieldUpdater(wordMLPackage);
+			phase = ConversionMetrics.startPhase("fields");
+			try {
+				updater.update(true);
+			} finally {
+				phase.end();
+			}
+
+			// Validate outPath
+			outPath = pathValidator(inPath, outPath);
+
+			// Output, FOP setup and stylesheet are reused between documents
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(outPath));
+			try {
+				DocxRenderContext.getInstance().render(wordMLPackage, out);
+			} finally {
+				out.close();
+			}
+			System.out.println("Saved: " + outPath);
+
+			// Cleanup
+			if (wordMLPackage.getMainDocumentPart().getFontTablePart() != null) {
+				wordMLPackage.getMainDocumentPart().getFontTablePart().deleteEmbeddedFontTempFiles();
+			}
+			updater = null;
+			wordMLPackage = null;
+			metrics.succeeded();
+		} finally {
+			metrics.end();
+		}
+	}
+
+	/**
+	 * Converts .docx files to pdf
+	 * 
+	 * @param handle
+	 *            Deadline, cancellation and limits of this conversion, bound
+	 *            to the calling thread while it runs. See
+	 *            {@link #docxToPDF(String, String, String)} for the other
+	 *            parameters
+	 * @throws ConversionAbortedException
+	 *             If the handle is cancelled, past its deadline or over a
+	 *             limit
+	 * @throws Exception
+	 */
+	public static void docxToPDF(String inPath, String outPath, String mainFontUsed, ConversionHandle handle)
+			throws Exception {
+		ConversionHandle previous = ConversionHandle.attach(handle);
+		try {
+			docxToPDF(inPath, outPath, mainFontUsed);
+		} finally {
+			ConversionHandle.detach(previous);
+		}
+	}
+
+	/**
+	 * Converts a .docx stream to pdf. Several documents can be converted at
+	 * the same time from different threads
+	 * 
+	 * @param in
+	 *            The docx input, not closed
+	 * @param out
+	 *            The PDF output, not closed
+	 * @param mainFontUsed
+	 * 			  The main font used in the document. See
+	 * 			  {@link #docxToPDF(String, String, String)}
+	 * @throws Exception
+	 */
+	public static void docxToPDF(InputStream in, OutputStream out, String mainFontUsed) throws Exception {
+		ConversionMetrics metrics = ConversionMetrics.begin("(stream)", DocumentFormat.DOCX);
+		try {
+			ConversionMetrics.Phase phase = ConversionMetrics.startPhase("load");
+			WordprocessingMLPackage wordMLPackage;
+			try {
+				wordMLPackage = WordprocessingMLPackage.load(in);
+			} finally {
+				phase.end();
+			}
+
+			//Set up font mapper
+			phase = ConversionMetrics.startPhase("fonts");
+			try {
+				FontCache.getInstance().createMapper(wordMLPackage, mainFontUsed);
+			} finally {
+				phase.end();
+			}
+
+			// Refresh the values of DOCPROPERTY fields
+			FieldUpdater updater = new FieldUpdater(wordMLPackage);
+			phase = ConversionMetrics.startPhase("fields");
+			try {
+				updater.update(true);
+			} finally {
+				phase.end();
+			}
+
+			// Output
+			DocxRenderContext.getInstance().render(wordMLPackage, out);
+			out.flush();
 
-		// Cleanup
-		out.flush();
-		out.close();
-		if (wordMLPackage.getMainDocumentPart().getFontTablePart() != null) {
-			wordMLPackage.getMainDocumentPart().getFontTablePart().deleteEmbeddedFontTempFiles();
+			// Cleanup
+			if (wordMLPackage.getMainDocumentPart().getFontTablePart() != null) {
+				wordMLPackage.getMainDocumentPart().getFontTablePart().deleteEmbeddedFontTempFiles();
+			}
+			metrics.succeeded();
+		} finally {
+			metrics.end();
 		}
-		updater = null;
-		wordMLPackage = null;
 	}
 
 	/**
@@ -162,14 +232,152 @@ public class Converter {
 	 */
 	public static void xlsToPDF(String inPath, String outPath)
 			throws IOException, ParserConfigurationException, DocumentException {
-		// Convert input file into HTML
-		Document inHTML = ExcelToHtmlConverter.process(new File(inPath));
+		xlsToPDF(inPath, outPath, true, true, false);
+	}
+
+	/**
+	 * Converts xls to pdf. Doesn't support chart conversion
+	 * 
+	 * @param inPath
+	 *            The input file path
+	 * @param outPath
+	 *            The output file path. If path format is not pdf, will be
+	 *            changed to pdf. Put null to generate pdf file in the same
+	 *            directory with the same name
+	 * @param outputColumnHeader
+	 *            Output the column headers (A, B, C...)
+	 * @param outputRowNumber
+	 *            Output the row numbers
+	 * @param streaming
+	 *            Read the workbook record by record with the HSSF event API
+	 *            instead of loading it into memory. Cells are rendered like
+	 *            xlsx cells. Use for large workbooks
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws DocumentException
+	 */
+	public static void xlsToPDF(String inPath, String outPath, boolean outputColumnHeader, boolean outputRowNumber,
+			boolean streaming) throws IOException, ParserConfigurationException, DocumentException {
+		ConversionMetrics metrics = ConversionMetrics.begin(inPath, DocumentFormat.XLS);
+		try {
+			// Convert input file into HTML
+			Document inHTML;
+			ConversionMetrics.Phase phase = ConversionMetrics.startPhase("html");
+			try {
+				if (streaming) {
+					inHTML = XLSXToHTMLConverter.convertXlsStreaming(new File(inPath), outputColumnHeader,
+							outputRowNumber);
+				} else {
+					HSSFWorkbook workbook = ExcelToHtmlUtils.loadXls(new File(inPath));
+					try {
+						inHTML = xlsToHTML(workbook, outputColumnHeader, outputRowNumber);
+					} finally {
+						workbook.close();
+					}
+				}
+			} finally {
+				phase.end();
+			}
+			ConversionHandle.checkCurrent();
+
+			// Validate outPath
+			outPath = pathValidator(inPath, outPath);
+
+			// Convert to PDF
+			htmlToPDF(inHTML, outPath);
+			metrics.succeeded();
+		} finally {
+			metrics.end();
+		}
+	}
+
+	/**
+	 * Converts xls to pdf. Doesn't support chart conversion
+	 * 
+	 * @param handle
+	 *            Deadline, cancellation and limits of this conversion, bound
+	 *            to the calling thread while it runs. See
+	 *            {@link #xlsToPDF(String, String, boolean, boolean, boolean)}
+	 *            for the other parameters
+	 * @throws ConversionAbortedException
+	 *             If the handle is cancelled, past its deadline or over a
+	 *             limit
+	 */
+	public static void xlsToPDF(String inPath, String outPath, boolean outputColumnHeader, boolean outputRowNumber,
+			boolean streaming, ConversionHandle handle)
+			throws IOException, ParserConfigurationException, DocumentException {
+		ConversionHandle previous = ConversionHandle.attach(handle);
+		try {
+			xlsToPDF(inPath, outPath, outputColumnHeader, outputRowNumber, streaming);
+		} finally {
+			ConversionHandle.detach(previous);
+		}
+	}
+
+	/**
+	 * Converts a loaded xls workbook to html with POI's converter. POI
+	 * converts the whole workbook at once, so the cells are counted against
+	 * the current conversion's handle before it starts
+	 */
+	private static Document xlsToHTML(HSSFWorkbook workbook, boolean outputColumnHeader, boolean outputRowNumber)
+			throws ParserConfigurationException {
+		ConversionHandle handle = ConversionHandle.current();
+		if (handle != null) {
+			long cells = 0;
+			for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+				for (Row row : workbook.getSheetAt(i)) {
+					cells += row.getPhysicalNumberOfCells();
+				}
+			}
+			handle.addCells(cells);
+		}
+		ExcelToHtmlConverter converter = new ExcelToHtmlConverter(
+				XMLHelper.getDocumentBuilderFactory().newDocumentBuilder().newDocument());
+		converter.setOutputColumnHeaders(outputColumnHeader);
+		converter.setOutputRowNumbers(outputRowNumber);
+		converter.processWorkbook(workbook);
+		return converter.getDocument();
+	}
 
-		// Validate outPath
-		outPath = pathValidator(inPath, outPath);
+	/**
+	 * Converts an xls stream to pdf. Doesn't support chart conversion
+	 * 
+	 * @param in
+	 *            The xls input, not closed
+	 * @param out
+	 *            The PDF output, not closed
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws DocumentException
+	 */
+	public static void xlsToPDF(InputStream in, OutputStream out)
+			throws IOException, ParserConfigurationException, DocumentException {
+		ConversionMetrics metrics = ConversionMetrics.begin("(stream)", DocumentFormat.XLS);
+		try {
+			// Convert input into HTML
+			ConversionMetrics.Phase phase = ConversionMetrics.startPhase("load");
+			HSSFWorkbook workbook;
+			try {
+				workbook = new HSSFWorkbook(in);
+			} finally {
+				phase.end();
+			}
+			Document inHTML;
+			phase = ConversionMetrics.startPhase("html");
+			try {
+				inHTML = xlsToHTML(workbook, true, true);
+			} finally {
+				phase.end();
+				workbook.close();
+			}
+			ConversionHandle.checkCurrent();
 
-		// Convert to PDF
-		htmlToPDF(inHTML, outPath);
+			// Convert to PDF
+			htmlToPDF(inHTML, out);
+			metrics.succeeded();
+		} finally {
+			metrics.end();
+		}
 	}
 
 	/**
@@ -187,26 +395,280 @@ public class Converter {
 	 * @throws TransformerException 
 	 */
 	public static void xlsxToPDF(String inPath, String outPath, boolean outputColumnHeader, boolean outputRowNumber) throws IOException, DocumentException, ParserConfigurationException, TransformerException {
-		//Load file
-		FileInputStream fis = new FileInputStream(new File(inPath));
-		
-		// Convert input file into HTML
-		Document inHTML = XLSXToHTMLConverter.convert(new XSSFWorkbook(fis), outputColumnHeader, outputRowNumber);
+		ConversionMetrics metrics = ConversionMetrics.begin(inPath, DocumentFormat.XLSX);
+		try {
+			//Open file without inflating the zip into memory first. XSSFWorkbook
+			//still parses every sheet, the streaming overload does not
+			OPCPackage pkg;
+			try {
+				pkg = OPCPackage.open(new File(inPath), PackageAccess.READ);
+			} catch (InvalidFormatException e) {
+				throw new IOException(e);
+			}
 		
-		fis.close();
+			// Convert input file into HTML
+			Document inHTML;
+			try {
+				ConversionMetrics.Phase phase = ConversionMetrics.startPhase("load");
+				XSSFWorkbook workbook;
+				try {
+					workbook = new XSSFWorkbook(pkg);
+				} finally {
+					phase.end();
+				}
+				phase = ConversionMetrics.startPhase("html");
+				try {
+					inHTML = XLSXToHTMLConverter.convert(workbook, outputColumnHeader, outputRowNumber);
+				} finally {
+					phase.end();
+				}
+			} finally {
+				pkg.revert();
+			}
 		
-		// Validate outPath
-		outPath = pathValidator(inPath, outPath);
+			// Validate outPath
+			outPath = pathValidator(inPath, outPath);
 		
-		//TODO: HTML output for font debugging
-//		TransformerFactory tranFactory = TransformerFactory.newInstance();
-//		Transformer aTransformer = tranFactory.newTransformer();
-//		Source src = new DOMSource(inHTML);
-//		Result dest = new StreamResult(new File(outPath + ".html"));
-//		aTransformer.transform(src, dest);
-
-		// Convert to PDF
-		htmlToPDF(inHTML, outPath);
+			//TODO: HTML output for font debugging
+	//		TransformerFactory tranFactory = TransformerFactory.newInstance();
+	//		Transformer aTransformer = tranFactory.newTransformer();
+	//		Source src = new DOMSource(inHTML);
+	//		Result dest = new StreamResult(new File(outPath + ".html"));
+	//		aTransformer.transform(src, dest);
+
+			// Convert to PDF
+			htmlToPDF(inHTML, outPath);
+			metrics.succeeded();
+		} finally {
+			metrics.end();
+		}
+	}
+
+	/**
+	 * Converts xlsx to pdf. Chart and color formatting conversion not supported
+	 * 
+	 * @param inPath
+	 *            The input file path
+	 * @param outPath
+	 *            The output file path. If path format is not pdf, will be
+	 *            changed to pdf. Put null to generate pdf file in the same
+	 *            directory with the same name
+	 * @param streaming
+	 *            Read the workbook row by row with the XSSF event API instead
+	 *            of loading it into memory. Use for large workbooks
+	 * @throws IOException
+	 * @throws DocumentException
+	 * @throws ParserConfigurationException
+	 * @throws TransformerException
+	 * @throws SAXException
+	 * @throws OpenXML4JException
+	 */
+	public static void xlsxToPDF(String inPath, String outPath, boolean outputColumnHeader, boolean outputRowNumber,
+			boolean streaming) throws IOException, DocumentException, ParserConfigurationException,
+			TransformerException, SAXException, OpenXML4JException {
+		xlsxToPDF(inPath, outPath, outputColumnHeader, outputRowNumber, streaming, 0);
+	}
+
+	/**
+	 * Converts xlsx to pdf. Chart and color formatting conversion not supported
+	 * 
+	 * @param inPath
+	 *            The input file path
+	 * @param outPath
+	 *            The output file path. If path format is not pdf, will be
+	 *            changed to pdf. Put null to generate pdf file in the same
+	 *            directory with the same name
+	 * @param streaming
+	 *            Read the workbook row by row with the XSSF event API instead
+	 *            of loading it into memory. Use for large workbooks
+	 * @param rowsPerChunk
+	 *            If positive, sheets are laid out and written in pieces of at
+	 *            most this many rows, each starting on a new page with the
+	 *            column header repeated. Memory used for layout is then bound
+	 *            by one piece instead of the whole workbook. 0 lays out the
+	 *            workbook as one document
+	 * @throws IOException
+	 * @throws DocumentException
+	 * @throws ParserConfigurationException
+	 * @throws TransformerException
+	 * @throws SAXException
+	 * @throws OpenXML4JException
+	 */
+	public static void xlsxToPDF(String inPath, String outPath, boolean outputColumnHeader, boolean outputRowNumber,
+			boolean streaming, int rowsPerChunk) throws IOException, DocumentException, ParserConfigurationException,
+			TransformerException, SAXException, OpenXML4JException {
+		ConversionMetrics metrics = ConversionMetrics.begin(inPath, DocumentFormat.XLSX);
+		try {
+			if (!streaming && rowsPerChunk <= 0) {
+				xlsxToPDF(inPath, outPath, outputColumnHeader, outputRowNumber);
+				metrics.succeeded();
+				return;
+			}
+
+			// Validate outPath
+			outPath = pathValidator(inPath, outPath);
+
+			if (rowsPerChunk > 0) {
+				// Convert to HTML and PDF piece by piece, into a temporary file
+				// renamed when complete so a failure leaves no partial PDF
+				File outFile = new File(outPath).getAbsoluteFile();
+				File tmp = File.createTempFile(outFile.getName(), ".tmp", outFile.getParentFile());
+				try {
+					//Open file without inflating the zip, the streaming reader reads
+					//one sheet at a time while XSSFWorkbook parses all of them
+					OPCPackage pkg = OPCPackage.open(new File(inPath), PackageAccess.READ);
+					try {
+						OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp));
+						try {
+							ChunkedPDFWriter pdfWriter = new ChunkedPDFWriter(os);
+							XLSXToHTMLConverter.convertChunked(pkg, streaming, outputColumnHeader, outputRowNumber,
+									rowsPerChunk, pdfWriter);
+							pdfWriter.finish();
+						} finally {
+							os.close();
+						}
+					} finally {
+						pkg.revert();
+					}
+					Files.move(tmp.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+				} catch (ChunkListenerException e) {
+					throw chunkFailure(e);
+				} finally {
+					tmp.delete();
+				}
+				System.out.println("Saved: " + outPath);
+				metrics.succeeded();
+				return;
+			}
+
+			//Open file, parts are read on demand
+			OPCPackage pkg = OPCPackage.open(new File(inPath), PackageAccess.READ);
+
+			// Convert input file into HTML
+			Document inHTML;
+			ConversionMetrics.Phase phase = ConversionMetrics.startPhase("html");
+			try {
+				inHTML = XLSXToHTMLConverter.convertStreaming(pkg, outputColumnHeader, outputRowNumber);
+			} finally {
+				phase.end();
+				pkg.revert();
+			}
+
+			// Convert to PDF
+			htmlToPDF(inHTML, outPath);
+			metrics.succeeded();
+		} finally {
+			metrics.end();
+		}
+	}
+
+	/**
+	 * Converts xlsx to pdf. Chart and color formatting conversion not supported
+	 * 
+	 * @param handle
+	 *            Deadline, cancellation and limits of this conversion, bound
+	 *            to the calling thread while it runs. See
+	 *            {@link #xlsxToPDF(String, String, boolean, boolean, boolean, int)}
+	 *            for the other parameters
+	 * @throws ConversionAbortedException
+	 *             If the handle is cancelled, past its deadline or over a
+	 *             limit
+	 * @throws IOException
+	 * @throws DocumentException
+	 * @throws ParserConfigurationException
+	 * @throws TransformerException
+	 * @throws SAXException
+	 * @throws OpenXML4JException
+	 */
+	public static void xlsxToPDF(String inPath, String outPath, boolean outputColumnHeader, boolean outputRowNumber,
+			boolean streaming, int rowsPerChunk, ConversionHandle handle) throws IOException, DocumentException,
+			ParserConfigurationException, TransformerException, SAXException, OpenXML4JException {
+		ConversionHandle previous = ConversionHandle.attach(handle);
+		try {
+			xlsxToPDF(inPath, outPath, outputColumnHeader, outputRowNumber, streaming, rowsPerChunk);
+		} finally {
+			ConversionHandle.detach(previous);
+		}
+	}
+
+	/**
+	 * Converts xlsx to pdf, converting and rendering several sheets at the
+	 * same time. Each sheet starts on a new page and gets a bookmark
+	 * 
+	 * @param inPath
+	 *            The input file path
+	 * @param outPath
+	 *            The output file path. If path format is not pdf, will be
+	 *            changed to pdf. Put null to generate pdf file in the same
+	 *            directory with the same name
+	 * @param sheetThreads
+	 *            Number of sheets converted at the same time
+	 * @throws Exception
+	 */
+	public static void xlsxToPDFParallel(String inPath, String outPath, boolean outputColumnHeader,
+			boolean outputRowNumber, int sheetThreads) throws Exception {
+		ConversionMetrics metrics = ConversionMetrics.begin(inPath, DocumentFormat.XLSX);
+		try {
+			// Validate outPath
+			outPath = pathValidator(inPath, outPath);
+
+			ParallelXLSXToPDFConverter converter = new ParallelXLSXToPDFConverter();
+			converter.setThreads(sheetThreads);
+			converter.setOutputColumnHeader(outputColumnHeader);
+			converter.setOutputRowNumber(outputRowNumber);
+			converter.convert(inPath, outPath);
+			metrics.succeeded();
+		} finally {
+			metrics.end();
+		}
+	}
+
+	/**
+	 * Converts an xlsx stream to pdf. Chart and color formatting conversion
+	 * not supported
+	 * 
+	 * @param in
+	 *            The xlsx input, not closed
+	 * @param out
+	 *            The PDF output, not closed
+	 * @param streaming
+	 *            Read the workbook row by row with the XSSF event API instead
+	 *            of loading it into memory
+	 * @throws IOException
+	 * @throws DocumentException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 * @throws OpenXML4JException
+	 */
+	public static void xlsxToPDF(InputStream in, OutputStream out, boolean outputColumnHeader,
+			boolean outputRowNumber, boolean streaming) throws IOException, DocumentException,
+			ParserConfigurationException, SAXException, OpenXML4JException {
+		ConversionMetrics metrics = ConversionMetrics.begin("(stream)", DocumentFormat.XLSX);
+		try {
+			//Read the package straight from the stream
+			OPCPackage pkg = OPCPackage.open(in);
+
+			// Convert input into HTML
+			Document inHTML;
+			ConversionMetrics.Phase phase = ConversionMetrics.startPhase("html");
+			try {
+				if (streaming) {
+					inHTML = XLSXToHTMLConverter.convertStreaming(pkg, outputColumnHeader, outputRowNumber);
+				} else {
+					inHTML = XLSXToHTMLConverter.convert(new XSSFWorkbook(pkg), outputColumnHeader, outputRowNumber);
+				}
+			} finally {
+				phase.end();
+				pkg.revert();
+			}
+
+			// Convert to PDF
+			htmlToPDF(inHTML, out);
+			metrics.succeeded();
+		} finally {
+			metrics.end();
+		}
 	}
 
 	/**
@@ -220,70 +682,128 @@ public class Converter {
 	 * @throws Exception
 	 */
 	public static void pptxToPDF(String inPath, String outPath) throws Exception {
-        
-		//Load file
-		FileInputStream fis = new FileInputStream(new File(inPath));
-		XMLSlideShow inPPT = new XMLSlideShow(fis);
-		byte[] byteImgData;
-		fis.close();
-		
-		// Validate outPath
-		outPath = pathValidator(inPath, outPath);
-		
-		//Dimesions
-		Dimension pgsize = inPPT.getPageSize();
-		int width = (int)pgsize.width;
-		int height = (int)pgsize.height;
-		
-		//Setup document
-		com.lowagie.text.Document document = new com.lowagie.text.Document();
-		PdfWriter.getInstance(document, new FileOutputStream(outPath));
-		PdfPTable table = new PdfPTable(1);	
-		
-		//Convert each slide into image
-		int i = 0;
-		for(XSLFSlide slide : inPPT.getSlides()){
-			
-			BufferedImage slideImg = new BufferedImage(pgsize.width, pgsize.height, BufferedImage.TYPE_INT_RGB);
-			
-			//G2D setup
-			Graphics2D g2d = slideImg.createGraphics();
-			g2d.setPaint(Color.white);
-			g2d.fill(new Rectangle2D.Float(0, 0, pgsize.width, pgsize.height));
-			g2d.clearRect(0, 0, width, height);
-			
-			slide.draw(g2d);
-			
-			//Save image into byte array
-			System.out.println("Drawing slide: " + (i+1));
-			ByteArrayOutputStream slideDrawn = new ByteArrayOutputStream();
-			ImageOutputStream outputStream = ImageIO.createImageOutputStream(slideDrawn);
-			Iterator<ImageWriter> iterator = ImageIO.getImageWritersByFormatName("png");
-			if(!iterator.hasNext()){
-				throw new IllegalStateException("Writers Not Found");
-			}
-			ImageWriter imageWriter = iterator.next();
-			imageWriter.setOutput(outputStream);
-			imageWriter.write(slideImg);
-			byteImgData = slideDrawn.toByteArray();
-			
-			//Printing to PDF
-			System.out.println("Printing slide: " + (i+1));			
-			Image img = Image.getInstance(byteImgData);
-			document.setPageSize(new Rectangle(img.getWidth(), img.getHeight()));
-			document.open();
-			img.setAbsolutePosition(0, 0);
-			table.addCell(new PdfPCell(img, true));
-			i++;
+		pptxToPDF(inPath, outPath, SlideRenderMode.PNG, 1);
+	}
+
+	/**
+	 * Converts pptx to PDF file, drawing slides on several threads
+	 * 
+	 * @param inPath The input file path
+	 * @param outPath
+	 * 			  The output file path. If path format is not pdf, will be
+	 *            changed to pdf. Put null to generate pdf file in the same
+	 *            directory with the same name
+	 * @param renderThreads
+	 * 			  Number of threads drawing slides. Each thread loads its own
+	 * 			  copy of the slide show
+	 * @throws Exception
+	 */
+	public static void pptxToPDF(String inPath, String outPath, int renderThreads) throws Exception {
+		pptxToPDF(inPath, outPath, SlideRenderMode.PNG, renderThreads);
+	}
+
+	/**
+	 * Converts pptx to PDF file
+	 * 
+	 * @param inPath The input file path
+	 * @param outPath
+	 * 			  The output file path. If path format is not pdf, will be
+	 *            changed to pdf. Put null to generate pdf file in the same
+	 *            directory with the same name
+	 * @param renderMode
+	 * 			  How slides are put on the pages
+	 * @throws Exception
+	 */
+	public static void pptxToPDF(String inPath, String outPath, SlideRenderMode renderMode) throws Exception {
+		pptxToPDF(inPath, outPath, renderMode, 1);
+	}
+
+	/**
+	 * Converts pptx to PDF file
+	 * 
+	 * @param inPath The input file path
+	 * @param outPath
+	 * 			  The output file path. If path format is not pdf, will be
+	 *            changed to pdf. Put null to generate pdf file in the same
+	 *            directory with the same name
+	 * @param renderMode
+	 * 			  How slides are put on the pages
+	 * @param renderThreads
+	 * 			  Number of threads drawing slides. Each thread loads its own
+	 * 			  copy of the slide show. Ignored for {@link SlideRenderMode#VECTOR}
+	 * @throws Exception
+	 */
+	public static void pptxToPDF(String inPath, String outPath, SlideRenderMode renderMode, int renderThreads)
+			throws Exception {
+		ConversionMetrics metrics = ConversionMetrics.begin(inPath, DocumentFormat.PPTX);
+		try {
+			// Validate outPath
+			outPath = pathValidator(inPath, outPath);
+
+			PPTXToPDFConverter converter = new PPTXToPDFConverter();
+			converter.setRenderMode(renderMode);
+			converter.setRenderThreads(renderThreads);
+			converter.convert(inPath, outPath);
+			metrics.succeeded();
+		} finally {
+			metrics.end();
+		}
+	}
+
+	/**
+	 * Converts pptx to PDF file
+	 * 
+	 * @param handle
+	 *            Deadline, cancellation and limits of this conversion, bound
+	 *            to the calling thread while it runs. See
+	 *            {@link #pptxToPDF(String, String, SlideRenderMode, int)} for
+	 *            the other parameters
+	 * @throws ConversionAbortedException
+	 *             If the handle is cancelled, past its deadline or over a
+	 *             limit
+	 * @throws Exception
+	 */
+	public static void pptxToPDF(String inPath, String outPath, SlideRenderMode renderMode, int renderThreads,
+			ConversionHandle handle) throws Exception {
+		ConversionHandle previous = ConversionHandle.attach(handle);
+		try {
+			pptxToPDF(inPath, outPath, renderMode, renderThreads);
+		} finally {
+			ConversionHandle.detach(previous);
+		}
+	}
+
+	/**
+	 * Converts a pptx stream to PDF
+	 * 
+	 * @param in
+	 *            The pptx input, not closed
+	 * @param out
+	 *            The PDF output, not closed
+	 * @param renderMode
+	 * 			  How slides are put on the pages
+	 * @param renderThreads
+	 * 			  Number of threads drawing slides. Ignored for
+	 * 			  {@link SlideRenderMode#VECTOR}
+	 * @throws Exception
+	 */
+	public static void pptxToPDF(InputStream in, OutputStream out, SlideRenderMode renderMode, int renderThreads)
+			throws Exception {
+		ConversionMetrics metrics = ConversionMetrics.begin("(stream)", DocumentFormat.PPTX);
+		try {
+			PPTXToPDFConverter converter = new PPTXToPDFConverter();
+			converter.setRenderMode(renderMode);
+			converter.setRenderThreads(renderThreads);
+			converter.convert(in, out);
+			out.flush();
+			metrics.succeeded();
+		} finally {
+			metrics.end();
 		}
-		document.add(table);
-		inPPT.close();
-	    document.close();
-	    System.out.println("Saved: " + outPath);
 	}
 
 	/**
-	 * Private method to convert HTML in w3c dom document to PDF using flyingSaucer
+	 * Converts HTML in w3c dom document to PDF using flyingSaucer
 	 * 
 	 * @param in
 	 *            Input document
@@ -293,24 +813,129 @@ public class Converter {
 	 * @throws IOException
 	 */
 	private static void htmlToPDF(Document in, String outPath) throws DocumentException, IOException {
-		ITextRenderer renderer = new ITextRenderer();
-		renderer.setDocument(in, null);
-		renderer.layout();
-		
-		//Set font
-		renderer.getFontResolver().addFont("fonts/ARIALUNI.TTF", BaseFont.IDENTITY_H, BaseFont.NOT_EMBEDDED);
-
 		//Output
-		OutputStream os = new FileOutputStream(outPath);
-		renderer.createPDF(os);
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(outPath));
+		try {
+			htmlToPDF(in, os);
+		} finally {
+			os.close();
+		}
 		
 		System.out.println("Saved: " + outPath);
+	}
 
-		// Cleanup
+	/**
+	 * Converts HTML in w3c dom document to PDF using flyingSaucer
+	 * 
+	 * @param in
+	 *            Input document
+	 * @param out
+	 *            Output stream, flushed but not closed
+	 * @throws DocumentException
+	 * @throws IOException
+	 */
+	static void htmlToPDF(Document in, OutputStream out) throws DocumentException, IOException {
+		//iText closes the stream it writes to, keep the caller's open
+		OutputStream os = new FilterOutputStream(out) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		};
+		ITextRenderer renderer = PDFRenderers.create();
+		layout(renderer, in);
+		ConversionMetrics.Phase phase = ConversionMetrics.startPhase("pdf");
+		try {
+			renderer.createPDF(os);
+		} finally {
+			phase.end();
+		}
 		os.flush();
-		os.close();
-		renderer = null;	
+	}
+
+	/**
+	 * Lays out a document, counting its pages for the current conversion.
+	 * The conversion's handle is checked before layout and before anything
+	 * is written
+	 */
+	private static void layout(ITextRenderer renderer, Document in) {
+		ConversionHandle.checkCurrent();
+		ConversionMetrics.Phase phase = ConversionMetrics.startPhase("layout");
+		try {
+			renderer.setDocument(in, null);
+			renderer.layout();
+		} finally {
+			phase.end();
+		}
+		int pages = renderer.getRootBox().getLayer().getPages().size();
+		ConversionMetrics metrics = ConversionMetrics.current();
+		if (metrics != null) {
+			metrics.addPages(pages);
+		}
+		ConversionHandle handle = ConversionHandle.current();
+		if (handle != null) {
+			handle.addPages(pages);
+		}
+	}
+
+	/**
+	 * Lays out and writes HTML documents one after another into one PDF,
+	 * each document starting on a new page
+	 */
+	private static class ChunkedPDFWriter implements ChunkedHtmlSink.ChunkListener {
+
+		private final OutputStream os;
+		private ITextRenderer renderer;
 
+		ChunkedPDFWriter(OutputStream os) {
+			this.os = os;
+		}
+
+		@Override
+		public void chunkReady(Document chunk, int index) throws DocumentException, IOException {
+			boolean first = renderer == null;
+			if (first) {
+				renderer = PDFRenderers.create();
+			}
+			layout(renderer, chunk);
+			ConversionMetrics.Phase phase = ConversionMetrics.startPhase("pdf");
+			try {
+				if (first) {
+					renderer.createPDF(os, false);
+				} else {
+					renderer.writeNextDocument();
+				}
+			} finally {
+				phase.end();
+			}
+		}
+
+		void finish() {
+			if (renderer != null) {
+				renderer.finishPDF();
+				renderer = null;
+			}
+		}
+	}
+
+	/**
+	 * @return the exception {@link ChunkedPDFWriter} failed a chunk with
+	 * @throws DocumentException
+	 *             If that is the exception
+	 */
+	private static IOException chunkFailure(ChunkListenerException e) throws DocumentException {
+		if (e.getCause() instanceof DocumentException) {
+			throw (DocumentException) e.getCause();
+		}
+		if (e.getCause() instanceof IOException) {
+			return (IOException) e.getCause();
+		}
+		return new IOException(e.getCause());
 	}
 
 	/**
@@ -322,7 +947,7 @@ public class Converter {
 	 *            Output file path
 	 * @return
 	 */
-	private static String pathValidator(String inPath, String outPath) {
+	static String pathValidator(String inPath, String outPath) {
 		if (outPath == null) {
 			return inPath.substring(0, inPath.indexOf('.')) + ".pdf";
 		} else if (!outPath.contains(".")) {
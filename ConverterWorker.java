@@ -0,0 +1,195 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Child JVM of a {@link WorkerPool}. Loads fonts and templates once, then
+ * converts one file at a time as told on stdin.
+ * 
+ * The protocol is one line per message, fields separated by tabs and URL
+ * encoded:
+ * 
+ * <pre>
+ * worker: READY
+ * pool:   CONVERT format inPath outPath timeoutMillis mainFontUsed outputColumnHeader outputRowNumber
+ * worker: OK usedHeapBytes
+ *         FAIL usedHeapBytes reason message
+ * pool:   QUIT
+ * </pre>
+ * 
+ * The reason of a failure is ERROR, FATAL (the worker exits after replying)
+ * or a {@link ConversionAbortedException.Reason}. Everything the converters
+ * print goes to stderr, stdout only carries the protocol
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class ConverterWorker {
+
+	static final String READY = "READY";
+	static final String CONVERT = "CONVERT";
+	static final String QUIT = "QUIT";
+	static final String OK = "OK";
+	static final String FAIL = "FAIL";
+	static final String ERROR = "ERROR";
+	static final String FATAL = "FATAL";
+
+	public static void main(String[] args) throws IOException {
+		// Keep stdout for the protocol, converter output goes to stderr
+		Writer protocol = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+		System.setOut(new PrintStream(System.err, true));
+
+		warmUp();
+		send(protocol, READY);
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		String line;
+		while ((line = in.readLine()) != null) {
+			String[] fields = decode(line);
+			if (QUIT.equals(fields[0])) {
+				break;
+			}
+			if (!CONVERT.equals(fields[0]) || fields.length < 8) {
+				send(protocol, FAIL, String.valueOf(usedHeap()), ERROR, "Bad request: " + line);
+				continue;
+			}
+			try {
+				convert(fields);
+				send(protocol, OK, String.valueOf(usedHeap()));
+			} catch (ConversionAbortedException e) {
+				send(protocol, FAIL, String.valueOf(usedHeap()), e.getReason().name(), e.getMessage());
+			} catch (OutOfMemoryError e) {
+				// The heap may be in any state, let the pool start a new worker
+				send(protocol, FAIL, "-1", FATAL, String.valueOf(e));
+				System.exit(3);
+			} catch (Throwable t) {
+				t.printStackTrace();
+				send(protocol, FAIL, String.valueOf(usedHeap()), ERROR, String.valueOf(t));
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Loads what every conversion needs, so the first job is as fast as the
+	 * others
+	 */
+	private static void warmUp() {
+		FontCache.getInstance();
+		try {
+			DocxRenderContext.getInstance();
+		} catch (Exception e) {
+			System.out.println("Docx setup failed: " + e);
+		}
+		try {
+			PDFRenderers.create();
+		} catch (Exception e) {
+			System.out.println("PDF renderer setup failed: " + e);
+		}
+	}
+
+	private static void convert(String[] fields) throws Exception {
+		DocumentFormat format = DocumentFormat.valueOf(fields[1]);
+		String inPath = fields[2];
+		String outPath = fields[3];
+		long timeoutMillis = Long.parseLong(fields[4]);
+		String mainFontUsed = fields[5].isEmpty() ? null : fields[5];
+		boolean outputColumnHeader = Boolean.parseBoolean(fields[6]);
+		boolean outputRowNumber = Boolean.parseBoolean(fields[7]);
+
+		// The pool kills the worker a little after the deadline, this lets
+		// the conversion stop cleanly before
+		ConversionHandle handle = new ConversionHandle();
+		if (timeoutMillis >= 0) {
+			handle.setTimeoutMillis(timeoutMillis);
+		}
+		switch (format) {
+			case DOCX:
+				Converter.docxToPDF(inPath, outPath, mainFontUsed, handle);
+				break;
+			case XLS:
+				Converter.xlsToPDF(inPath, outPath, outputColumnHeader, outputRowNumber, false, handle);
+				break;
+			case XLSX:
+				Converter.xlsxToPDF(inPath, outPath, outputColumnHeader, outputRowNumber, false, 0, handle);
+				break;
+			case PPTX:
+				Converter.pptxToPDF(inPath, outPath, SlideRenderMode.PNG, 1, handle);
+				break;
+		}
+	}
+
+	/**
+	 * @return the heap still in use after a garbage collection, so that
+	 *         garbage left by the last job does not count
+	 */
+	private static long usedHeap() {
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static void send(Writer protocol, String... fields) throws IOException {
+		protocol.write(encode(fields));
+		protocol.write('\n');
+		protocol.flush();
+	}
+
+	static String encode(String... fields) {
+		StringBuilder line = new StringBuilder();
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				if (i > 0) {
+					line.append('\t');
+				}
+				line.append(URLEncoder.encode(fields[i] != null ? fields[i] : "", "UTF-8"));
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return line.toString();
+	}
+
+	static String[] decode(String line) {
+		String[] fields = line.split("\t", -1);
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				fields[i] = URLDecoder.decode(fields[i], "UTF-8");
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return fields;
+	}
+}
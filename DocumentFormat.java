@@ -0,0 +1,66 @@
+import java.util.Locale;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Input formats supported by {@link Converter}
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public enum DocumentFormat {
+
+	DOCX("docx"), XLS("xls"), XLSX("xlsx"), PPTX("pptx");
+
+	private final String extension;
+
+	private DocumentFormat(String extension) {
+		this.extension = extension;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * @param fileName
+	 *            File name or path
+	 * @return the format matching the file extension, or null if not
+	 *         supported
+	 */
+	public static DocumentFormat fromFileName(String fileName) {
+		int dot = fileName.lastIndexOf('.');
+		if (dot < 0) {
+			return null;
+		}
+		String extension = fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+		for (DocumentFormat format : values()) {
+			if (format.extension.equals(extension)) {
+				return format;
+			}
+		}
+		return null;
+	}
+}
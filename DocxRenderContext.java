@@ -0,0 +1,250 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.fop.apps.FOUserAgent;
+import org.apache.fop.apps.Fop;
+import org.apache.fop.apps.FopConfParser;
+import org.apache.fop.apps.FopFactory;
+import org.apache.fop.apps.MimeConstants;
+import org.docx4j.Docx4J;
+import org.docx4j.XmlUtils;
+import org.docx4j.convert.out.FOSettings;
+import org.docx4j.fonts.Mapper;
+import org.docx4j.fonts.PhysicalFont;
+import org.docx4j.fonts.PhysicalFonts;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.utils.ResourceUtils;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Long lived rendering context for docx to PDF conversion.
+ * 
+ * Docx4J.toFO builds a new FOP factory, FOP configuration and font setup and
+ * loads the docx2fo stylesheet for every document. This context compiles the
+ * stylesheet once and keeps a FopFactory per font configuration, so FOP's
+ * font metrics stay loaded between documents using the same fonts. The
+ * configuration is built from the document's font mapper the way docx4j
+ * builds it, so fonts resolve as with Docx4J.toFO. Per document only the
+ * XSL-FO and the Fop instance are created. Docx4J is only used to produce
+ * XSL-FO, FOP is driven here.
+ * 
+ * A context can be used by several threads at once.
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class DocxRenderContext {
+
+	private static final String DOCX2FO_XSLT = "org/docx4j/convert/out/fo/docx2fo.xslt";
+
+	// Distinct font configurations whose FopFactory is kept
+	private static final int MAX_FOP_FACTORIES = 16;
+
+	private static DocxRenderContext instance;
+
+	private final Templates docx2fo;
+
+	// FOP configuration -> factory, least recently used first
+	private final Map<String, FopFactory> fopFactories = new LinkedHashMap<String, FopFactory>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, FopFactory> eldest) {
+			return size() > MAX_FOP_FACTORIES;
+		}
+	};
+
+	// TransformerFactory is not thread safe, each thread gets its own
+	private final ThreadLocal<TransformerFactory> transformerFactory = new ThreadLocal<TransformerFactory>() {
+		@Override
+		protected TransformerFactory initialValue() {
+			return TransformerFactory.newInstance();
+		}
+	};
+
+	/**
+	 * @throws Exception
+	 */
+	public DocxRenderContext() throws Exception {
+		//Compile docx4j's stylesheet once
+		InputStream xslt = ResourceUtils.getResource(DOCX2FO_XSLT);
+		try {
+			docx2fo = XmlUtils.getTransformerTemplate(new StreamSource(xslt));
+		} finally {
+			xslt.close();
+		}
+	}
+
+	/**
+	 * @return the context shared by this JVM
+	 * @throws Exception
+	 */
+	public static synchronized DocxRenderContext getInstance() throws Exception {
+		if (instance == null) {
+			instance = new DocxRenderContext();
+		}
+		return instance;
+	}
+
+	/**
+	 * Renders a docx to PDF
+	 * 
+	 * @param wordMLPackage
+	 *            The document, with its font mapper set
+	 * @param out
+	 *            The PDF output, not closed
+	 * @throws Exception
+	 */
+	public void render(WordprocessingMLPackage wordMLPackage, OutputStream out) throws Exception {
+		File imageDir = Files.createTempDirectory("docx-images").toFile();
+		try {
+			//Document to XSL-FO, with the precompiled stylesheet
+			FOSettings foSettings = Docx4J.createFOSettings();
+			foSettings.setWmlPackage(wordMLPackage);
+			foSettings.setApacheFopMime(FOSettings.INTERNAL_FO_MIME);
+			foSettings.setCustomXsltTemplates(docx2fo);
+			foSettings.setImageDirPath(imageDir.getAbsolutePath());
+			ByteArrayOutputStream fo = new ByteArrayOutputStream();
+			ConversionHandle.checkCurrent();
+			ConversionMetrics.Phase phase = ConversionMetrics.startPhase("fo");
+			//docx4j looks fonts up in PhysicalFonts while writing XSL-FO
+			String conf;
+			Lock fonts = FontCache.getInstance().readLock();
+			fonts.lock();
+			try {
+				Docx4J.toFO(foSettings, fo, Docx4J.FLAG_EXPORT_PREFER_XSL);
+				conf = fopConfig(wordMLPackage);
+			} finally {
+				fonts.unlock();
+				phase.end();
+			}
+
+			//XSL-FO to PDF, with the factory of the document's fonts
+			FopFactory fopFactory = getFopFactory(conf);
+			FOUserAgent userAgent = fopFactory.newFOUserAgent();
+			Fop fop = fopFactory.newFop(MimeConstants.MIME_PDF, userAgent, out);
+			Transformer transformer = transformerFactory.get().newTransformer();
+			ConversionHandle.checkCurrent();
+			phase = ConversionMetrics.startPhase("pdf");
+			try {
+				transformer.transform(new StreamSource(new ByteArrayInputStream(fo.toByteArray())),
+						new SAXResult(fop.getDefaultHandler()));
+			} finally {
+				phase.end();
+			}
+			ConversionMetrics metrics = ConversionMetrics.current();
+			if (metrics != null && fop.getResults() != null) {
+				metrics.addPages(fop.getResults().getPageCount());
+			}
+		} finally {
+			delete(imageDir);
+		}
+	}
+
+	/**
+	 * @return the factory of a FOP configuration, created on first use
+	 */
+	private synchronized FopFactory getFopFactory(String conf) throws Exception {
+		FopFactory fopFactory = fopFactories.get(conf);
+		if (fopFactory == null) {
+			FopConfParser parser = new FopConfParser(new ByteArrayInputStream(conf.getBytes("UTF-8")),
+					new File(".").toURI());
+			fopFactory = parser.getFopFactoryBuilder().build();
+			fopFactories.put(conf, fopFactory);
+		}
+		return fopFactory;
+	}
+
+	/**
+	 * FOP configuration declaring the physical fonts the document's fonts are
+	 * mapped to, with their bold and italic forms. The XSL-FO names fonts by
+	 * their physical name, so that is the name declared. Call with the
+	 * {@link FontCache#readLock()} held
+	 */
+	static String fopConfig(WordprocessingMLPackage wordMLPackage) {
+		Mapper fontMapper = wordMLPackage.getFontMapper();
+		StringBuilder conf = new StringBuilder();
+		conf.append("<fop version=\"1.0\"><renderers><renderer mime=\"application/pdf\"><fonts>");
+		Set<String> declared = new HashSet<String>();
+		//Sorted, so documents with the same fonts get the same configuration
+		for (String fontName : new TreeSet<String>(wordMLPackage.getMainDocumentPart().fontsInUse())) {
+			PhysicalFont font = fontMapper.get(fontName);
+			if (font == null || !declared.add(font.getName())) {
+				continue;
+			}
+			declareFont(conf, font, font.getName(), "normal", "normal");
+			declareFont(conf, PhysicalFonts.getBoldForm(font), font.getName(), "normal", "bold");
+			declareFont(conf, PhysicalFonts.getItalicForm(font), font.getName(), "italic", "normal");
+			declareFont(conf, PhysicalFonts.getBoldItalicForm(font), font.getName(), "italic", "bold");
+		}
+		conf.append("</fonts></renderer></renderers></fop>");
+		return conf.toString();
+	}
+
+	private static void declareFont(StringBuilder conf, PhysicalFont font, String name, String style,
+			String weight) {
+		if (font == null || font.getEmbeddedURI() == null) {
+			return;
+		}
+		conf.append("<font");
+		if (font.getEmbedFontInfo() != null && font.getEmbedFontInfo().getSubFontName() != null) {
+			conf.append(" sub-font=\"").append(escape(font.getEmbedFontInfo().getSubFontName())).append('"');
+		}
+		conf.append(" embed-url=\"").append(escape(font.getEmbeddedURI().toString())).append("\">");
+		conf.append("<font-triplet name=\"").append(escape(name)).append("\" style=\"").append(style)
+				.append("\" weight=\"").append(weight).append("\"/></font>");
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+}
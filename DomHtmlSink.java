@@ -0,0 +1,156 @@
+import org.apache.poi.hwpf.converter.HtmlDocumentFacade;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * {@link HtmlSink} building a w3c DOM through POI's HtmlDocumentFacade. The
+ * whole document is kept in memory, use {@link XhtmlStreamSink} to write it
+ * out instead
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class DomHtmlSink implements HtmlSink {
+
+	private final HtmlDocumentFacade htmlDocFacade;
+
+	private Element table;
+	private Element tableBody;
+
+	public DomHtmlSink(Document doc) {
+		this(new HtmlDocumentFacade(doc));
+	}
+
+	public DomHtmlSink(HtmlDocumentFacade htmlDocFacade) {
+		this.htmlDocFacade = htmlDocFacade;
+	}
+
+	public Document getDocument() {
+		return htmlDocFacade.getDocument();
+	}
+
+	@Override
+	public String getOrCreateCssClass(String classNamePrefix, String style) {
+		return htmlDocFacade.getOrCreateCssClass(classNamePrefix, style);
+	}
+
+	/**
+	 * The table stays in memory until {@link #endTable()}, so column group and
+	 * header row can be added after the rows
+	 */
+	@Override
+	public boolean requiresColumnsFirst() {
+		return false;
+	}
+
+	@Override
+	public void startDocument() {
+	}
+
+	@Override
+	public void writeSheetHeader(String sheetName) {
+		Element h2 = htmlDocFacade.createHeader2();
+		h2.appendChild(htmlDocFacade.createText(sheetName));
+		htmlDocFacade.getBody().appendChild(h2);
+	}
+
+	@Override
+	public void startTable(String cssClass) {
+		table = htmlDocFacade.createTable();
+		table.setAttribute("class", cssClass);
+		tableBody = htmlDocFacade.createTableBody();
+	}
+
+	@Override
+	public void writeColumnGroup(int[] widths, int count) {
+		Element columnGroup = htmlDocFacade.createTableColumnGroup();
+		for (int c = 0; c < count; c++) {
+			Element col = htmlDocFacade.createTableColumn();
+			if (widths[c] >= 0) {
+				col.setAttribute("width", String.valueOf(widths[c]));
+			}
+			columnGroup.appendChild(col);
+		}
+		table.appendChild(columnGroup);
+	}
+
+	@Override
+	public void writeHeaderRow(HtmlRow row) {
+		Element tableHeader = htmlDocFacade.createTableHeader();
+		table.appendChild(tableHeader);
+
+		Element tr = htmlDocFacade.createTableRow();
+		appendCells(tr, row);
+		tableHeader.appendChild(tr);
+	}
+
+	@Override
+	public void startTableBody() {
+	}
+
+	@Override
+	public void writeRow(String classNamePrefix, String style, HtmlRow row) {
+		Element tr = htmlDocFacade.createTableRow();
+		htmlDocFacade.addStyleClass(tr, classNamePrefix, style);
+		appendCells(tr, row);
+		tableBody.appendChild(tr);
+	}
+
+	private void appendCells(Element tr, HtmlRow row) {
+		for (int i = 0; i < row.size(); i++) {
+			HtmlRow.Cell cell = row.get(i);
+			Element td = cell.isHeader() ? htmlDocFacade.createTableHeaderCell() : htmlDocFacade.createTableCell();
+			if (cell.getColSpan() != 1) {
+				td.setAttribute("colspan", String.valueOf(cell.getColSpan()));
+			}
+			if (cell.getRowSpan() != 1) {
+				td.setAttribute("rowspan", String.valueOf(cell.getRowSpan()));
+			}
+			if (cell.getCssClass() != null) {
+				td.setAttribute("class", cell.getCssClass());
+			}
+			if (cell.getText() != null) {
+				td.appendChild(htmlDocFacade.createText(cell.getText()));
+			}
+			tr.appendChild(td);
+		}
+	}
+
+	@Override
+	public void endTable() {
+		table.appendChild(tableBody);
+		htmlDocFacade.getBody().appendChild(table);
+		table = null;
+		tableBody = null;
+	}
+
+	@Override
+	public void endDocument() {
+		htmlDocFacade.updateStylesheet();
+	}
+}
@@ -0,0 +1,474 @@
+import java.awt.Font;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.docx4j.fonts.IdentityPlusMapper;
+import org.docx4j.fonts.Mapper;
+import org.docx4j.fonts.PhysicalFont;
+import org.docx4j.fonts.PhysicalFonts;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Process wide cache of the fonts installed on this machine, used by docx
+ * conversion.
+ * 
+ * The font directories are scanned once and the result (font file, last
+ * modified time and family name) is kept in an index file, by default
+ * ~/.docstopdf/font-index. Later JVMs read the index instead of scanning
+ * again, unless a font directory changed since.
+ * 
+ * Parsing a font for docx4j is the expensive part, so fonts are registered
+ * with docx4j lazily: when a document is set up, the families it uses are
+ * looked up in the index and only their files are loaded. Only the
+ * substitution fonts and the families of {@link #FONT_WHITELIST} are ever
+ * registered, as with the font regex docx4j was given before.
+ * 
+ * docx4j keeps its fonts in PhysicalFonts, a static map it reads without
+ * locking. It is only written, by registering fonts, adding the fonts
+ * embedded in a document or {@link #refresh()}, under a lock that
+ * conversions hold for reading while docx4j uses the fonts.
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class FontCache {
+
+	/**
+	 * System property overriding the location of the index file
+	 */
+	public static final String INDEX_PROPERTY = "docstopdf.fontIndex";
+
+	/**
+	 * Fonts substituted for the common document fonts
+	 */
+	static final String FALLBACK_FONT = "Arial Unicode MS";
+	static final String CJK_FONT = "SimSun";
+
+	/**
+	 * Families that documents may use besides the substitutions
+	 */
+	static final Pattern FONT_WHITELIST = Pattern.compile(".*(Courier New|Arial|Times New Roman|Comic Sans|Georgia"
+			+ "|Impact|Lucida Console|Lucida Sans Unicode|Palatino Linotype|Tahoma|Trebuchet|Verdana|Symbol"
+			+ "|Webdings|Wingdings|MS Sans Serif|MS Serif).*");
+
+	private static final String[] FONT_EXTENSIONS = { ".ttf", ".otf", ".ttc", ".pfb" };
+
+	private static FontCache instance;
+
+	private final File indexFile;
+	private final List<File> fontDirs;
+
+	// Lower case family name -> font files
+	private final Map<String, List<File>> families = new HashMap<String, List<File>>();
+	// Font file -> last modified, as scanned
+	private final Map<File, Long> fileTimes = new HashMap<File, Long>();
+	// Font file -> family name
+	private final Map<File, String> fileFamilies = new HashMap<File, String>();
+	// Directory -> last modified, as scanned
+	private final Map<File, Long> dirTimes = new LinkedHashMap<File, Long>();
+	private final Set<File> registered = new HashSet<File>();
+	// Lower case names of the families registered with docx4j
+	private final Set<String> registeredFamilies = new HashSet<String>();
+
+	// Guards PhysicalFonts, see the class comment
+	private final ReadWriteLock physicalFontsLock = new ReentrantReadWriteLock();
+
+	private volatile Map<String, PhysicalFont> substitutions = Collections.emptyMap();
+	private volatile PhysicalFont fallbackFont;
+
+	FontCache(File indexFile, List<File> fontDirs) {
+		this.indexFile = indexFile;
+		this.fontDirs = fontDirs;
+	}
+
+	/**
+	 * @return the font cache of this JVM, loaded from the index file or
+	 *         scanned on first use
+	 */
+	public static synchronized FontCache getInstance() {
+		if (instance == null) {
+			String index = System.getProperty(INDEX_PROPERTY);
+			File indexFile = index != null ? new File(index)
+					: new File(System.getProperty("user.home"), ".docstopdf" + File.separator + "font-index");
+			FontCache cache = new FontCache(indexFile, defaultFontDirs());
+			cache.load();
+			cache.registerFonts();
+			instance = cache;
+		}
+		return instance;
+	}
+
+	/**
+	 * @return the font directories scanned by this cache
+	 */
+	public List<File> getFontDirs() {
+		return Collections.unmodifiableList(fontDirs);
+	}
+
+	/**
+	 * Font directories of the usual platforms, plus the fonts directory of the
+	 * working directory
+	 */
+	static List<File> defaultFontDirs() {
+		String home = System.getProperty("user.home");
+		List<File> dirs = new ArrayList<File>();
+		String windir = System.getenv("WINDIR");
+		if (windir != null) {
+			dirs.add(new File(windir, "Fonts"));
+		}
+		dirs.add(new File("/Library/Fonts"));
+		dirs.add(new File("/System/Library/Fonts"));
+		dirs.add(new File(home, "Library/Fonts"));
+		dirs.add(new File("/usr/share/fonts"));
+		dirs.add(new File("/usr/local/share/fonts"));
+		dirs.add(new File(home, ".fonts"));
+		dirs.add(new File(home, ".local/share/fonts"));
+		dirs.add(new File("fonts"));
+		List<File> existing = new ArrayList<File>();
+		for (File dir : dirs) {
+			if (dir.isDirectory()) {
+				existing.add(dir.getAbsoluteFile());
+			}
+		}
+		return existing;
+	}
+
+	/**
+	 * Reads the index file, or scans the font directories when the index is
+	 * missing or out of date
+	 */
+	synchronized void load() {
+		if (readIndex() && isUpToDate()) {
+			return;
+		}
+		scanAll();
+	}
+
+	/**
+	 * Scans the font directories again, rewrites the index file and registers
+	 * fonts installed since in the families already registered with docx4j.
+	 * Waits for conversions producing XSL-FO to finish
+	 */
+	public synchronized void refresh() {
+		scanAll();
+		registerFonts();
+	}
+
+	private void scanAll() {
+		families.clear();
+		fileTimes.clear();
+		fileFamilies.clear();
+		dirTimes.clear();
+		for (File dir : fontDirs) {
+			scan(dir);
+		}
+		try {
+			writeIndex();
+		} catch (IOException e) {
+			System.out.println("Could not write font index " + indexFile + ": " + e.getMessage());
+		}
+	}
+
+	private void scan(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		dirTimes.put(dir, dir.lastModified());
+		for (File file : files) {
+			if (file.isDirectory()) {
+				scan(file);
+			} else if (isFontFile(file)) {
+				String family = readFamily(file);
+				if (family != null) {
+					addFont(family, file, file.lastModified());
+				}
+			}
+		}
+	}
+
+	private static boolean isFontFile(File file) {
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		for (String extension : FONT_EXTENSIONS) {
+			if (name.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String readFamily(File file) {
+		int format = file.getName().toLowerCase(Locale.ROOT).endsWith(".pfb") ? Font.TYPE1_FONT : Font.TRUETYPE_FONT;
+		try {
+			return Font.createFont(format, file).getFamily(Locale.ENGLISH);
+		} catch (Exception e) {
+			// Not a font awt can read, docx4j would skip it as well
+			return null;
+		}
+	}
+
+	private void addFont(String family, File file, long lastModified) {
+		String key = family.toLowerCase(Locale.ROOT);
+		List<File> files = families.get(key);
+		if (files == null) {
+			files = new ArrayList<File>(1);
+			families.put(key, files);
+		}
+		files.add(file);
+		fileTimes.put(file, lastModified);
+		fileFamilies.put(file, family);
+	}
+
+	/**
+	 * @return true when none of the font directories changed since the index
+	 *         was written
+	 */
+	private boolean isUpToDate() {
+		for (File dir : fontDirs) {
+			if (!dirTimes.containsKey(dir)) {
+				return false;
+			}
+		}
+		for (Map.Entry<File, Long> dir : dirTimes.entrySet()) {
+			if (dir.getKey().lastModified() != dir.getValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Index format, one entry per line: "D\tmtime\tpath" for a scanned
+	 * directory, "F\tmtime\tpath\tfamily" for a font file
+	 */
+	private boolean readIndex() {
+		if (!indexFile.isFile()) {
+			return false;
+		}
+		try {
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] fields = line.split("\t");
+					if (fields.length == 3 && "D".equals(fields[0])) {
+						dirTimes.put(new File(fields[2]), Long.parseLong(fields[1]));
+					} else if (fields.length == 4 && "F".equals(fields[0])) {
+						addFont(fields[3], new File(fields[2]), Long.parseLong(fields[1]));
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			return true;
+		} catch (IOException e) {
+			System.out.println("Could not read font index " + indexFile + ": " + e.getMessage());
+		} catch (NumberFormatException e) {
+			System.out.println("Corrupt font index " + indexFile);
+		}
+		families.clear();
+		fileTimes.clear();
+		fileFamilies.clear();
+		dirTimes.clear();
+		return false;
+	}
+
+	private void writeIndex() throws IOException {
+		File dir = indexFile.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + dir);
+		}
+		// Write next to the index and rename, so other JVMs never read half an index
+		File tmp = new File(indexFile.getPath() + ".tmp");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8));
+		try {
+			for (Map.Entry<File, Long> entry : dirTimes.entrySet()) {
+				writer.write("D\t" + entry.getValue() + "\t" + entry.getKey().getPath() + "\n");
+			}
+			for (Map.Entry<File, String> entry : fileFamilies.entrySet()) {
+				File file = entry.getKey();
+				writer.write("F\t" + fileTimes.get(file) + "\t" + file.getPath() + "\t" + entry.getValue() + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+		if (!tmp.renameTo(indexFile)) {
+			indexFile.delete();
+			if (!tmp.renameTo(indexFile)) {
+				throw new IOException("Cannot replace " + indexFile);
+			}
+		}
+	}
+
+	/**
+	 * Registers the substitution fonts with docx4j, along with fonts installed
+	 * since in the families registered before, and sets up the substitutions
+	 */
+	synchronized void registerFonts() {
+		Lock lock = physicalFontsLock.writeLock();
+		lock.lock();
+		try {
+			registerFamily(FALLBACK_FONT);
+			registerFamily(CJK_FONT);
+			for (String family : new ArrayList<String>(registeredFamilies)) {
+				registerFamily(family);
+			}
+			fallbackFont = PhysicalFonts.get(FALLBACK_FONT);
+			substitutions = createSubstitutions(fallbackFont, PhysicalFonts.get(CJK_FONT));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Registers the indexed files of a family not registered yet. Call with
+	 * the write lock held
+	 */
+	private void registerFamily(String family) {
+		String key = family.toLowerCase(Locale.ROOT);
+		registeredFamilies.add(key);
+		List<File> files = families.get(key);
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (registered.contains(file) || !file.isFile()) {
+				continue;
+			}
+			try {
+				PhysicalFonts.addPhysicalFont(file.toURI().toURL());
+				registered.add(file);
+			} catch (Exception e) {
+				System.out.println("Could not load font " + file + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Arial, Times New Roman, Calibri, Helvetica, 等线 and 宋体 are mapped to
+	 * Arial Unicode MS, Libian SC Regular to SimSun
+	 */
+	private static Map<String, PhysicalFont> createSubstitutions(PhysicalFont font, PhysicalFont cjkFont) {
+		Map<String, PhysicalFont> map = new LinkedHashMap<String, PhysicalFont>();
+		if (font != null) {
+			map.put("Times New Roman", font);
+			map.put("Arial", font);
+			map.put("Calibri", font);
+			map.put("Helvetica", font);
+			map.put("等线", font);
+			map.put("宋体", font);
+		}
+		if (cjkFont != null) {
+			map.put("Libian SC Regular", cjkFont);
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * Font substitutions applied to every docx conversion, see
+	 * {@link #createSubstitutions(PhysicalFont, PhysicalFont)}
+	 * 
+	 * @return read only map of document font name to physical font
+	 */
+	public Map<String, PhysicalFont> getSubstitutions() {
+		return substitutions;
+	}
+
+	/**
+	 * @return lock to hold while docx4j reads PhysicalFonts during a
+	 *         conversion, e.g. while producing XSL-FO
+	 */
+	public Lock readLock() {
+		return physicalFontsLock.readLock();
+	}
+
+	/**
+	 * Sets up the font mapper of one document. The whitelisted families the
+	 * document uses are registered with docx4j first, unless they are
+	 * substituted anyway. The mapper belongs to the document only: the shared
+	 * substitutions and mainFontUsed are copied into it, so conversions
+	 * running at the same time never see each other's fonts
+	 * 
+	 * @param wordMLPackage
+	 *            The document
+	 * @param mainFontUsed
+	 *            The main font used in the document, mapped to Arial Unicode
+	 *            MS. May be null
+	 * @return the mapper set on the document
+	 * @throws Exception
+	 */
+	public synchronized Mapper createMapper(WordprocessingMLPackage wordMLPackage, String mainFontUsed)
+			throws Exception {
+		// Registering fonts and setting the mapper, which adds the fonts
+		// embedded in the document, write PhysicalFonts: no conversion may
+		// read it meanwhile
+		Lock lock = physicalFontsLock.writeLock();
+		lock.lock();
+		try {
+			for (String family : wordMLPackage.getMainDocumentPart().fontsInUse()) {
+				boolean substituted = substitutions.containsKey(family)
+						|| (family.equals(mainFontUsed) && fallbackFont != null);
+				if (!substituted && FONT_WHITELIST.matcher(family).matches()) {
+					registerFamily(family);
+				}
+			}
+			Mapper fontMapper = new IdentityPlusMapper();
+			wordMLPackage.setFontMapper(fontMapper);
+			for (Map.Entry<String, PhysicalFont> substitution : substitutions.entrySet()) {
+				fontMapper.put(substitution.getKey(), substitution.getValue());
+			}
+			if (mainFontUsed != null && fallbackFont != null) {
+				fontMapper.put(mainFontUsed, fallbackFont);
+			}
+			return fontMapper;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
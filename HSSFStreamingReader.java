@@ -0,0 +1,670 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.ColumnInfoRecord;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.DefaultColWidthRecord;
+import org.apache.poi.hssf.record.DefaultRowHeightRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.FilePassRecord;
+import org.apache.poi.hssf.record.FontRecord;
+import org.apache.poi.hssf.record.FormatRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MergeCellsRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Reads a legacy xls (BIFF8) workbook with the HSSF event API and feeds it
+ * row by row to {@link XLSXToHTMLConverter}, without building HSSFWorkbook.
+ * Cells are rendered by the same code as xlsx cells.
+ * 
+ * The workbook stream is read once for the workbook globals and the sheet
+ * properties stored after the cell data (merged regions), and once more for
+ * the rows. If the converter writes to a stream, each sheet's rows are read
+ * one more time to measure the table before it is written. Those reads
+ * start at the offset of the sheet's sub stream taken from its BOUNDSHEET
+ * record and stop at its end, so each sheet is read on its own. Only the
+ * shared strings, the cell styles and one row are kept in memory
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class HSSFStreamingReader {
+
+	// Returned by a listener to stop reading the stream
+	private static final short ABORT = 1;
+
+	private final NPOIFSFileSystem fs;
+
+	// Workbook globals
+	private final List<BoundSheetRecord> boundSheets = new ArrayList<BoundSheetRecord>();
+	// Sheet offsets can only be used in a stream that is not encrypted
+	private boolean encrypted;
+	private final List<FontRecord> fonts = new ArrayList<FontRecord>();
+	private final List<ExtendedFormatRecord> cellStyles = new ArrayList<ExtendedFormatRecord>();
+	private final Map<Integer, String> formats = new HashMap<Integer, String>();
+	private SSTRecord sst;
+	private boolean date1904;
+
+	// Worksheets, by index of their sub stream. Chart sheets have none
+	private final Map<Integer, SheetMetadata> sheets = new TreeMap<Integer, SheetMetadata>();
+
+	/**
+	 * @param fs
+	 *            File system of the xls file
+	 */
+	public HSSFStreamingReader(NPOIFSFileSystem fs) {
+		this.fs = fs;
+	}
+
+	/**
+	 * Opens an xls file read only
+	 * 
+	 * @param xls
+	 *            The file
+	 * @return reader of the file, close its file system when done
+	 * @throws IOException
+	 */
+	public static HSSFStreamingReader open(File xls) throws IOException {
+		return new HSSFStreamingReader(new NPOIFSFileSystem(xls, true));
+	}
+
+	public NPOIFSFileSystem getFileSystem() {
+		return fs;
+	}
+
+	/**
+	 * Reads all sheets of the workbook into the converter
+	 * 
+	 * @param converter
+	 *            The converter to feed
+	 * @throws IOException
+	 */
+	public void read(XLSXToHTMLConverter converter) throws IOException {
+		process(new MetadataListener());
+
+		converter.beginWorkbook(buildStyleTable(), getFormatIndexes(), getFormatStrings(), date1904);
+		if (converter.isMeasurePassRequired()) {
+			// Every sheet is measured on its own, so the stream is read per sheet
+			for (Map.Entry<Integer, SheetMetadata> sheet : sheets.entrySet()) {
+				SheetMetadata metadata = sheet.getValue();
+				converter.beginSheet(metadata.name, metadata.rowCount, metadata.mergedRegions, metadata);
+				if (metadata.rowCount > 0) {
+					processSheet(sheet.getKey(), new RowListener(converter, sheet.getKey(), true));
+					converter.startSheetRows();
+					processSheet(sheet.getKey(), new RowListener(converter, sheet.getKey(), false));
+				}
+				converter.endSheet();
+			}
+		} else {
+			process(new RowListener(converter, -1, false));
+		}
+		converter.endWorkbook();
+	}
+
+	private void process(AbortableHSSFListener listener) throws IOException {
+		HSSFRequest request = new HSSFRequest();
+		request.addListenerForAllRecords(listener);
+		try {
+			new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs.getRoot());
+		} catch (HSSFUserException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Reads one worksheet, from the start of its sub stream if its offset is
+	 * known
+	 */
+	private void processSheet(int subStream, RowListener listener) throws IOException {
+		SheetMetadata metadata = sheets.get(subStream);
+		if (encrypted || metadata.offset < 0) {
+			process(listener);
+			return;
+		}
+		listener.startAt(subStream);
+		HSSFRequest request = new HSSFRequest();
+		request.addListenerForAllRecords(listener);
+		InputStream in = fs.getRoot().createDocumentInputStream(HSSFWorkbook.getWorkbookDirEntryName(fs.getRoot()));
+		try {
+			long remaining = metadata.offset;
+			while (remaining > 0) {
+				long skipped = in.skip(remaining);
+				if (skipped <= 0) {
+					throw new EOFException("Sheet " + metadata.name + " starts after the end of the workbook stream");
+				}
+				remaining -= skipped;
+			}
+			new HSSFEventFactory().abortableProcessEvents(request, in);
+		} catch (HSSFUserException e) {
+			throw new IOException(e);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * CSS of every cell style (extended format), built like the CSS of xlsx
+	 * cell styles
+	 */
+	private CellStyleTable buildStyleTable() {
+		String[] css = new String[cellStyles.size()];
+		for (int i = 0; i < css.length; i++) {
+			ExtendedFormatRecord xf = cellStyles.get(i);
+			FontRecord font = getFont(xf.getFontIndex());
+			css[i] = XLSXToHTMLConverter.buildStyle(xf.getAlignment(), BorderStyle.valueOf(xf.getBorderTop()),
+					BorderStyle.valueOf(xf.getBorderRight()), BorderStyle.valueOf(xf.getBorderBottom()),
+					BorderStyle.valueOf(xf.getBorderLeft()), font != null && font.getBoldWeight() >= 700,
+					font == null ? 0 : (short) (font.getFontHeight() / 20), font != null && font.isItalic());
+		}
+		return CellStyleTable.of(css);
+	}
+
+	/**
+	 * Font index 4 does not exist in BIFF, later fonts are shifted by one
+	 */
+	private FontRecord getFont(int fontIndex) {
+		int i = fontIndex < 4 ? fontIndex : fontIndex - 1;
+		return i >= 0 && i < fonts.size() ? fonts.get(i) : null;
+	}
+
+	private short[] getFormatIndexes() {
+		short[] formatIndexes = new short[cellStyles.size()];
+		for (int i = 0; i < formatIndexes.length; i++) {
+			formatIndexes[i] = cellStyles.get(i).getFormatIndex();
+		}
+		return formatIndexes;
+	}
+
+	private String[] getFormatStrings() {
+		String[] formatStrings = new String[cellStyles.size()];
+		for (int i = 0; i < formatStrings.length; i++) {
+			int formatIndex = cellStyles.get(i).getFormatIndex();
+			String format = formats.get(formatIndex);
+			if (format == null) {
+				format = BuiltinFormats.getBuiltinFormat(formatIndex);
+			}
+			formatStrings[i] = format == null ? "General" : format;
+		}
+		return formatStrings;
+	}
+
+	/**
+	 * Column definitions, default sizes, row count and merged regions of a
+	 * sheet
+	 */
+	private static class SheetMetadata implements SheetColumns {
+
+		private final String name;
+		// Offset of the sheet's BOF record in the workbook stream, -1 if unknown
+		private final int offset;
+		private final List<ColumnInfoRecord> columns = new ArrayList<ColumnInfoRecord>();
+		private final List<CellRangeAddress> mergedRegions = new ArrayList<CellRangeAddress>();
+		private int defaultColumnWidth = 8;
+		private short defaultRowHeight = 0xff;
+		private int rowCount;
+
+		SheetMetadata(String name, int offset) {
+			this.name = name;
+			this.offset = offset;
+		}
+
+		private ColumnInfoRecord findColumn(int columnIndex) {
+			for (ColumnInfoRecord column : columns) {
+				if (column.getFirstColumn() <= columnIndex && columnIndex <= column.getLastColumn()) {
+					return column;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public boolean isColumnHidden(int columnIndex) {
+			ColumnInfoRecord column = findColumn(columnIndex);
+			return column != null && column.getHidden();
+		}
+
+		@Override
+		public int getColumnWidth(int columnIndex) {
+			ColumnInfoRecord column = findColumn(columnIndex);
+			return column != null ? column.getColumnWidth() : defaultColumnWidth * 256;
+		}
+	}
+
+	/**
+	 * Tracks nesting of BOF/EOF sub streams. Embedded charts are sub streams
+	 * inside a worksheet
+	 */
+	private static abstract class SubStreamListener extends AbortableHSSFListener {
+
+		private int depth;
+		private int subStream = -1;
+		// Sub stream index of the worksheet being read, -1 outside of one
+		protected int worksheet = -1;
+
+		/**
+		 * Sets up the listener for a stream starting at the BOF record of the
+		 * given sub stream instead of at the workbook globals
+		 */
+		void startAt(int subStream) {
+			depth = 1;
+			this.subStream = subStream - 1;
+		}
+
+		@Override
+		public short abortableProcessRecord(Record record) {
+			if (record.getSid() == BOFRecord.sid) {
+				depth++;
+				if (depth == 2) {
+					subStream++;
+					if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+						worksheet = subStream;
+						return startWorksheet(worksheet);
+					}
+				}
+				return 0;
+			}
+			if (record.getSid() == EOFRecord.sid) {
+				short result = 0;
+				if (depth == 2 && worksheet >= 0) {
+					result = endWorksheet(worksheet);
+					worksheet = -1;
+				}
+				depth--;
+				return result;
+			}
+			if (depth == 1) {
+				globalRecord(record);
+			} else if (depth == 2 && worksheet >= 0) {
+				return sheetRecord(record);
+			}
+			return 0;
+		}
+
+		protected void globalRecord(Record record) {
+		}
+
+		protected abstract short startWorksheet(int subStream);
+
+		protected abstract short sheetRecord(Record record);
+
+		protected abstract short endWorksheet(int subStream);
+	}
+
+	/**
+	 * Collects the workbook globals and the properties of every sheet
+	 */
+	private class MetadataListener extends SubStreamListener {
+
+		private SheetMetadata sheet;
+		// BOUNDSHEET records in the order of the sub streams
+		private BoundSheetRecord[] orderedSheets;
+		// Rows of the current sheet with a ROW record or a cell. ROW records
+		// are optional, a sheet may have cells without them
+		private final BitSet rows = new BitSet();
+
+		@Override
+		protected void globalRecord(Record record) {
+			switch (record.getSid()) {
+				case BoundSheetRecord.sid:
+					boundSheets.add((BoundSheetRecord) record);
+					break;
+				case FilePassRecord.sid:
+					encrypted = true;
+					break;
+				case FontRecord.sid:
+					fonts.add((FontRecord) record);
+					break;
+				case ExtendedFormatRecord.sid:
+					cellStyles.add((ExtendedFormatRecord) record);
+					break;
+				case FormatRecord.sid:
+					FormatRecord format = (FormatRecord) record;
+					formats.put(format.getIndexCode(), format.getFormatString());
+					break;
+				case SSTRecord.sid:
+					sst = (SSTRecord) record;
+					break;
+				case DateWindow1904Record.sid:
+					date1904 = ((DateWindow1904Record) record).getWindowing() == 1;
+					break;
+				default:
+					break;
+			}
+		}
+
+		@Override
+		protected short startWorksheet(int subStream) {
+			if (orderedSheets == null) {
+				orderedSheets = BoundSheetRecord.orderByBofPosition(boundSheets);
+			}
+			BoundSheetRecord bound = subStream < orderedSheets.length ? orderedSheets[subStream] : null;
+			sheet = bound != null ? new SheetMetadata(bound.getSheetname(), bound.getPositionOfBof())
+					: new SheetMetadata("Sheet" + (subStream + 1), -1);
+			sheets.put(subStream, sheet);
+			rows.clear();
+			return 0;
+		}
+
+		@Override
+		protected short sheetRecord(Record record) {
+			switch (record.getSid()) {
+				case ColumnInfoRecord.sid:
+					sheet.columns.add((ColumnInfoRecord) record);
+					break;
+				case DefaultColWidthRecord.sid:
+					sheet.defaultColumnWidth = ((DefaultColWidthRecord) record).getColWidth();
+					break;
+				case DefaultRowHeightRecord.sid:
+					sheet.defaultRowHeight = ((DefaultRowHeightRecord) record).getRowHeight();
+					break;
+				case RowRecord.sid:
+					rows.set(((RowRecord) record).getRowNumber());
+					break;
+				case MulBlankRecord.sid:
+					rows.set(((MulBlankRecord) record).getRow());
+					break;
+				case MulRKRecord.sid:
+					rows.set(((MulRKRecord) record).getRow());
+					break;
+				case MergeCellsRecord.sid:
+					MergeCellsRecord merges = (MergeCellsRecord) record;
+					for (int i = 0; i < merges.getNumAreas(); i++) {
+						sheet.mergedRegions.add(merges.getAreaAt(i));
+					}
+					break;
+				default:
+					if (record instanceof CellValueRecordInterface) {
+						rows.set(((CellValueRecordInterface) record).getRow());
+					}
+					break;
+			}
+			return 0;
+		}
+
+		@Override
+		protected short endWorksheet(int subStream) {
+			sheet.rowCount = rows.cardinality();
+			sheet = null;
+			return 0;
+		}
+	}
+
+	/**
+	 * Reads the cells of one or all sheets into a {@link SheetRow} and passes
+	 * every completed row to the converter, either to be measured or to be
+	 * converted
+	 */
+	private class RowListener extends SubStreamListener {
+
+		private final XLSXToHTMLConverter converter;
+		// Sub stream of the only sheet to read, -1 for all sheets
+		private final int target;
+		private final boolean measure;
+		private final SheetRow row = new SheetRow();
+
+		private SheetMetadata sheet;
+		private boolean reading;
+		// Row records of the current row block not reached by the cells yet
+		private final TreeMap<Integer, RowRecord> pendingRows = new TreeMap<Integer, RowRecord>();
+		private int rowNum = -1;
+		// Formula cell waiting for its cached string result
+		private SheetCell pendingString;
+
+		RowListener(XLSXToHTMLConverter converter, int target, boolean measure) {
+			this.converter = converter;
+			this.target = target;
+			this.measure = measure;
+		}
+
+		@Override
+		protected short startWorksheet(int subStream) {
+			sheet = sheets.get(subStream);
+			reading = target < 0 || target == subStream;
+			if (reading && target < 0) {
+				converter.beginSheet(sheet.name, sheet.rowCount, sheet.mergedRegions, sheet);
+				if (sheet.rowCount > 0) {
+					converter.startSheetRows();
+				}
+			}
+			return 0;
+		}
+
+		@Override
+		protected short endWorksheet(int subStream) {
+			if (!reading) {
+				return 0;
+			}
+			finishRow();
+			flushPendingRows(Integer.MAX_VALUE);
+			// Nothing of this sheet may reach the next one
+			rowNum = -1;
+			pendingRows.clear();
+			pendingString = null;
+			if (target < 0) {
+				converter.endSheet();
+				return 0;
+			}
+			// Nothing left to read
+			return ABORT;
+		}
+
+		@Override
+		protected short sheetRecord(Record record) {
+			if (!reading) {
+				return 0;
+			}
+			switch (record.getSid()) {
+				case RowRecord.sid:
+					RowRecord rowRecord = (RowRecord) record;
+					pendingRows.put(rowRecord.getRowNumber(), rowRecord);
+					break;
+				case BlankRecord.sid:
+					BlankRecord blank = (BlankRecord) record;
+					addCell(blank.getRow(), blank.getColumn(), blank.getXFIndex()).setCellType(CellType.BLANK);
+					break;
+				case MulBlankRecord.sid:
+					MulBlankRecord blanks = (MulBlankRecord) record;
+					for (int i = 0; i < blanks.getNumColumns(); i++) {
+						addCell(blanks.getRow(), blanks.getFirstColumn() + i, blanks.getXFAt(i))
+								.setCellType(CellType.BLANK);
+					}
+					break;
+				case NumberRecord.sid:
+					NumberRecord number = (NumberRecord) record;
+					setNumeric(addCell(number.getRow(), number.getColumn(), number.getXFIndex()), number.getValue());
+					break;
+				case RKRecord.sid:
+					RKRecord rk = (RKRecord) record;
+					setNumeric(addCell(rk.getRow(), rk.getColumn(), rk.getXFIndex()), rk.getRKNumber());
+					break;
+				case MulRKRecord.sid:
+					MulRKRecord rks = (MulRKRecord) record;
+					for (int i = 0; i < rks.getNumColumns(); i++) {
+						setNumeric(addCell(rks.getRow(), rks.getFirstColumn() + i, rks.getXFAt(i)),
+								rks.getRKNumberAt(i));
+					}
+					break;
+				case LabelSSTRecord.sid:
+					LabelSSTRecord label = (LabelSSTRecord) record;
+					SheetCell labelCell = addCell(label.getRow(), label.getColumn(), label.getXFIndex());
+					labelCell.setCellType(CellType.STRING);
+					labelCell.setStringValue(sst.getString(label.getSSTIndex()).getString());
+					break;
+				case LabelRecord.sid:
+					LabelRecord oldLabel = (LabelRecord) record;
+					SheetCell oldLabelCell = addCell(oldLabel.getRow(), oldLabel.getColumn(), oldLabel.getXFIndex());
+					oldLabelCell.setCellType(CellType.STRING);
+					oldLabelCell.setStringValue(oldLabel.getValue());
+					break;
+				case BoolErrRecord.sid:
+					BoolErrRecord boolErr = (BoolErrRecord) record;
+					SheetCell boolErrCell = addCell(boolErr.getRow(), boolErr.getColumn(), boolErr.getXFIndex());
+					if (boolErr.isBoolean()) {
+						boolErrCell.setCellType(CellType.BOOLEAN);
+						boolErrCell.setBooleanValue(boolErr.getBooleanValue());
+					} else {
+						boolErrCell.setCellType(CellType.ERROR);
+						boolErrCell.setStringValue(ErrorEval.getText(boolErr.getErrorValue()));
+					}
+					break;
+				case FormulaRecord.sid:
+					readFormula((FormulaRecord) record);
+					break;
+				case StringRecord.sid:
+					if (pendingString != null) {
+						pendingString.setStringValue(((StringRecord) record).getString());
+						pendingString = null;
+					}
+					break;
+				default:
+					break;
+			}
+			return 0;
+		}
+
+		private void readFormula(FormulaRecord formula) {
+			SheetCell cell = addCell(formula.getRow(), formula.getColumn(), formula.getXFIndex());
+			cell.setCellType(CellType.FORMULA);
+			CellType resultType = CellType.forInt(formula.getCachedResultType());
+			cell.setCachedFormulaResultType(resultType);
+			switch (resultType) {
+				case NUMERIC:
+					cell.setNumericValue(formula.getValue());
+					break;
+				case STRING:
+					// The string follows in a STRING record
+					if (formula.hasCachedResultString()) {
+						pendingString = cell;
+					}
+					break;
+				case BOOLEAN:
+					cell.setBooleanValue(formula.getCachedBooleanValue());
+					break;
+				case ERROR:
+					cell.setStringValue(ErrorEval.getText(formula.getCachedErrorValue()));
+					break;
+				default:
+					break;
+			}
+		}
+
+		private void setNumeric(SheetCell cell, double value) {
+			cell.setCellType(CellType.NUMERIC);
+			cell.setNumericValue(value);
+		}
+
+		/**
+		 * Adds a cell to the row window, passing on the previous row and rows
+		 * without cells first when the cell starts a new row
+		 */
+		private SheetCell addCell(int cellRow, int column, int styleIndex) {
+			if (cellRow != rowNum) {
+				finishRow();
+				flushPendingRows(cellRow);
+				startRow(cellRow, pendingRows.remove(cellRow));
+			}
+			SheetCell cell = row.addCell(column);
+			cell.setStyleIndex(styleIndex);
+			return cell;
+		}
+
+		private void startRow(int newRowNum, RowRecord rowRecord) {
+			short height = sheet.defaultRowHeight;
+			boolean zeroHeight = false;
+			if (rowRecord != null) {
+				// Bit 15 set means the row has the default height
+				if ((rowRecord.getHeight() & 0x8000) == 0) {
+					height = (short) (rowRecord.getHeight() & 0x7FFF);
+				}
+				zeroHeight = rowRecord.getZeroHeight();
+			}
+			row.reset(newRowNum, height, zeroHeight);
+			rowNum = newRowNum;
+		}
+
+		private void finishRow() {
+			if (rowNum >= 0) {
+				deliver();
+				rowNum = -1;
+			}
+		}
+
+		/**
+		 * Passes on rows without cells above the given row
+		 */
+		private void flushPendingRows(int beforeRow) {
+			while (!pendingRows.isEmpty() && pendingRows.firstKey() < beforeRow) {
+				Map.Entry<Integer, RowRecord> empty = pendingRows.pollFirstEntry();
+				startRow(empty.getKey(), empty.getValue());
+				finishRow();
+			}
+		}
+
+		private void deliver() {
+			if (measure) {
+				converter.measureSheetRow(row);
+			} else {
+				converter.processSheetRow(row);
+			}
+		}
+	}
+}
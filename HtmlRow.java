@@ -0,0 +1,155 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * Cells of one table row, buffered until the row is passed to an
+ * {@link HtmlSink}. Cell instances are reused from row to row
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class HtmlRow {
+
+	private final List<Cell> cells = new ArrayList<Cell>();
+	private int size;
+	private int committed;
+
+	/**
+	 * Removes all cells
+	 */
+	public void clear() {
+		size = 0;
+		committed = 0;
+	}
+
+	/**
+	 * @return a new TD cell
+	 */
+	public Cell addCell() {
+		return add(false);
+	}
+
+	/**
+	 * @return a new TH cell
+	 */
+	public Cell addHeaderCell() {
+		return add(true);
+	}
+
+	private Cell add(boolean header) {
+		Cell cell;
+		if (size < cells.size()) {
+			cell = cells.get(size);
+		} else {
+			cell = new Cell();
+			cells.add(cell);
+		}
+		cell.reset(header);
+		size++;
+		return cell;
+	}
+
+	/**
+	 * Keeps all cells added so far. Cells added after the last commit are
+	 * dropped by {@link #dropUncommitted()}
+	 */
+	public void commit() {
+		committed = size;
+	}
+
+	public void dropUncommitted() {
+		size = committed;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Cell get(int index) {
+		return cells.get(index);
+	}
+
+	/**
+	 * A TD or TH cell
+	 */
+	public static class Cell {
+
+		private boolean header;
+		private String cssClass;
+		private int colSpan;
+		private int rowSpan;
+		private String text;
+
+		private void reset(boolean header) {
+			this.header = header;
+			cssClass = null;
+			colSpan = 1;
+			rowSpan = 1;
+			text = null;
+		}
+
+		public boolean isHeader() {
+			return header;
+		}
+
+		public String getCssClass() {
+			return cssClass;
+		}
+
+		public void setCssClass(String cssClass) {
+			this.cssClass = cssClass;
+		}
+
+		public int getColSpan() {
+			return colSpan;
+		}
+
+		public void setColSpan(int colSpan) {
+			this.colSpan = colSpan;
+		}
+
+		public int getRowSpan() {
+			return rowSpan;
+		}
+
+		public void setRowSpan(int rowSpan) {
+			this.rowSpan = rowSpan;
+		}
+
+		/**
+		 * @return text of the cell, null for a cell without text node
+		 */
+		public String getText() {
+			return text;
+		}
+
+		public void setText(String text) {
+			this.text = text;
+		}
+	}
+}
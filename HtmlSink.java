@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * Output of {@link XLSXToHTMLConverter}. The converter only describes tables
+ * row by row, the sink decides whether they are kept in a DOM
+ * ({@link DomHtmlSink}) or written out right away ({@link XhtmlStreamSink}).
+ * 
+ * Calls come in document order: {@link #startDocument()}, then for each sheet
+ * {@link #writeSheetHeader(String)} and, if the sheet has rows,
+ * {@link #startTable(String)} ... {@link #endTable()}, and finally
+ * {@link #endDocument()}. Column group and header row are written before
+ * {@link #startTableBody()} if {@link #requiresColumnsFirst()}, otherwise
+ * they may also come after the rows
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public interface HtmlSink {
+
+	/**
+	 * Registers a CSS rule
+	 * 
+	 * @param classNamePrefix
+	 *            Prefix of the class name
+	 * @param style
+	 *            CSS declarations of the rule
+	 * @return name of the class, the same one for the same prefix and style
+	 */
+	String getOrCreateCssClass(String classNamePrefix, String style);
+
+	/**
+	 * @return true if column group and header row of a table have to be known
+	 *         before its first row
+	 */
+	boolean requiresColumnsFirst();
+
+	void startDocument();
+
+	void writeSheetHeader(String sheetName);
+
+	void startTable(String cssClass);
+
+	/**
+	 * @param widths
+	 *            Widths of the columns in pixels, negative for a column
+	 *            without width
+	 * @param count
+	 *            Number of columns used in widths
+	 */
+	void writeColumnGroup(int[] widths, int count);
+
+	void writeHeaderRow(HtmlRow row);
+
+	void startTableBody();
+
+	/**
+	 * @param classNamePrefix
+	 *            Prefix for the row class
+	 * @param style
+	 *            CSS declarations of the row
+	 * @param row
+	 *            Cells of the row
+	 */
+	void writeRow(String classNamePrefix, String style, HtmlRow row);
+
+	void endTable();
+
+	void endDocument();
+}
@@ -0,0 +1,132 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Finds the merged region containing a cell. Memory is proportional to the
+ * number of merged regions, not to the area they cover.
+ * 
+ * Rows are expected in ascending order, as the converter reads them. The
+ * index sweeps down the sheet and keeps the regions crossing the current row
+ * in a tree by first column, so a lookup is O(log n). Merged regions never
+ * overlap, so at most one region of that tree can contain a column. Looking
+ * up a row above the current one starts the sweep over.
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class MergedRegionIndex {
+
+	private static final Comparator<CellRangeAddress> BY_FIRST_ROW = new Comparator<CellRangeAddress>() {
+		@Override
+		public int compare(CellRangeAddress a, CellRangeAddress b) {
+			return a.getFirstRow() < b.getFirstRow() ? -1 : (a.getFirstRow() == b.getFirstRow() ? 0 : 1);
+		}
+	};
+
+	private static final Comparator<CellRangeAddress> BY_LAST_ROW = new Comparator<CellRangeAddress>() {
+		@Override
+		public int compare(CellRangeAddress a, CellRangeAddress b) {
+			return a.getLastRow() < b.getLastRow() ? -1 : (a.getLastRow() == b.getLastRow() ? 0 : 1);
+		}
+	};
+
+	// Regions sorted by first row
+	private final List<CellRangeAddress> regions;
+
+	// Sweep state: regions crossing the current row, by first column and by last row
+	private final TreeMap<Integer, CellRangeAddress> active = new TreeMap<Integer, CellRangeAddress>();
+	private final PriorityQueue<CellRangeAddress> expiring;
+	private int next;
+	private int currentRow = -1;
+
+	/**
+	 * @param mergedRegions
+	 *            Merged regions of the sheet
+	 */
+	public MergedRegionIndex(List<CellRangeAddress> mergedRegions) {
+		regions = new ArrayList<CellRangeAddress>(mergedRegions);
+		Collections.sort(regions, BY_FIRST_ROW);
+		expiring = new PriorityQueue<CellRangeAddress>(Math.max(1, regions.size()), BY_LAST_ROW);
+	}
+
+	/**
+	 * @return true if the sheet has no merged regions
+	 */
+	public boolean isEmpty() {
+		return regions.isEmpty();
+	}
+
+	/**
+	 * @param rowIx
+	 *            0-based row index
+	 * @param columnIx
+	 *            0-based column index
+	 * @return the merged region containing the cell, null if none
+	 */
+	public CellRangeAddress getMergedRange(int rowIx, int columnIx) {
+		if (regions.isEmpty()) {
+			return null;
+		}
+		if (rowIx != currentRow) {
+			moveTo(rowIx);
+		}
+		Map.Entry<Integer, CellRangeAddress> entry = active.floorEntry(columnIx);
+		if (entry == null || entry.getValue().getLastColumn() < columnIx) {
+			return null;
+		}
+		return entry.getValue();
+	}
+
+	private void moveTo(int rowIx) {
+		if (rowIx < currentRow) {
+			active.clear();
+			expiring.clear();
+			next = 0;
+		}
+		currentRow = rowIx;
+		while (next < regions.size() && regions.get(next).getFirstRow() <= rowIx) {
+			CellRangeAddress region = regions.get(next++);
+			if (region.getLastRow() >= rowIx) {
+				active.put(region.getFirstColumn(), region);
+				expiring.add(region);
+			}
+		}
+		while (!expiring.isEmpty() && expiring.peek().getLastRow() < rowIx) {
+			CellRangeAddress region = expiring.poll();
+			if (active.get(region.getFirstColumn()) == region) {
+				active.remove(region.getFirstColumn());
+			}
+		}
+	}
+}
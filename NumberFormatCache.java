@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Formats numeric cell values, keeping what is known about each data format
+ * by format index. Values with the General format and integer values with
+ * the "0" format are turned into text directly, other formats go through the
+ * DataFormatter.
+ * 
+ * Not thread safe, like the DataFormatter it wraps.
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class NumberFormatCache {
+
+	// DataFormatter prints General numbers of 1E11 and above in scientific notation
+	private static final double MAX_PLAIN_INTEGER = 1e11;
+
+	private static final byte UNKNOWN = 0;
+	private static final byte GENERAL = 1;
+	private static final byte INTEGER = 2;
+	private static final byte OTHER = 3;
+
+	private final DataFormatter formatter;
+	private final boolean date1904;
+
+	// Kind of each format index, and the format string it was determined for
+	private byte[] kinds = new byte[256];
+	private String[] formatStrings = new String[256];
+
+	/**
+	 * @param formatter
+	 *            Formatter used for formats without a fast path
+	 * @param date1904
+	 *            If the workbook uses the 1904 date system
+	 */
+	public NumberFormatCache(DataFormatter formatter, boolean date1904) {
+		this.formatter = formatter;
+		this.date1904 = date1904;
+	}
+
+	/**
+	 * Formats a value the way the DataFormatter does
+	 * 
+	 * @param value
+	 *            The numeric value
+	 * @param formatIndex
+	 *            Data format index of the cell style
+	 * @param formatString
+	 *            Data format string of the cell style
+	 * @return the formatted value
+	 */
+	public String format(double value, int formatIndex, String formatString) {
+		byte kind = getKind(formatIndex, formatString);
+		if ((kind == GENERAL || kind == INTEGER) && isPlainInteger(value)) {
+			return Long.toString((long) value);
+		}
+		if (kind == GENERAL) {
+			return formatter.formatRawCellContents(value, formatIndex, "General", date1904);
+		}
+		return formatter.formatRawCellContents(value, formatIndex, formatString, date1904);
+	}
+
+	private byte getKind(int formatIndex, String formatString) {
+		if (formatIndex < 0) {
+			return classify(formatIndex, formatString);
+		}
+		if (formatIndex >= kinds.length) {
+			int length = Math.max(formatIndex + 1, kinds.length * 2);
+			kinds = Arrays.copyOf(kinds, length);
+			formatStrings = Arrays.copyOf(formatStrings, length);
+		}
+		byte kind = kinds[formatIndex];
+		// Same index, same format string within a workbook, compare by reference first
+		String known = formatStrings[formatIndex];
+		if (kind == UNKNOWN || (known != formatString && (known == null || !known.equals(formatString)))) {
+			kind = classify(formatIndex, formatString);
+			kinds[formatIndex] = kind;
+			formatStrings[formatIndex] = formatString;
+		}
+		return kind;
+	}
+
+	private static byte classify(int formatIndex, String formatString) {
+		if (formatString == null || formatIndex == 0 || "General".equalsIgnoreCase(formatString)) {
+			return GENERAL;
+		}
+		if ("0".equals(formatString) && !DateUtil.isADateFormat(formatIndex, formatString)) {
+			return INTEGER;
+		}
+		return OTHER;
+	}
+
+	/**
+	 * @return true if the value is a whole number DataFormatter prints without
+	 *         decimals or exponent
+	 */
+	private static boolean isPlainInteger(double value) {
+		return value > -MAX_PLAIN_INTEGER && value < MAX_PLAIN_INTEGER && value == Math.rint(value)
+				&& (value != 0 || Double.doubleToRawLongBits(value) == 0);
+	}
+}
@@ -0,0 +1,92 @@
+import java.io.IOException;
+
+import org.xhtmlrenderer.pdf.ITextRenderer;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.BaseFont;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Creates the ITextRenderers used for HTML to PDF conversion, with the fonts
+ * already registered.
+ * 
+ * Registering ARIALUNI.TTF (a 23 MB TrueType file) used to take hundreds of
+ * milliseconds for every document. The font is now parsed once per JVM:
+ * iText keeps created fonts in its own cache, which is filled here before
+ * any renderer registers the font. A renderer then only has to look the font
+ * up. Fonts are registered before the first layout so that layout can use
+ * them.
+ * 
+ * Every conversion gets a new renderer. A renderer holds on to the document
+ * and the layout it last rendered, so renderers are not kept between
+ * conversions; only the parsed fonts are shared.
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class PDFRenderers {
+
+	private static final String[] FONTS = { "fonts/ARIALUNI.TTF" };
+
+	private static volatile boolean fontsLoaded;
+
+	private PDFRenderers() {
+	}
+
+	/**
+	 * @return a new renderer with the fonts registered, to be used for one
+	 *         conversion
+	 * @throws DocumentException
+	 * @throws IOException
+	 *             If a font can not be read
+	 */
+	public static ITextRenderer create() throws DocumentException, IOException {
+		loadFonts();
+		ITextRenderer renderer = new ITextRenderer();
+		//Set font
+		for (String font : FONTS) {
+			renderer.getFontResolver().addFont(font, BaseFont.IDENTITY_H, BaseFont.NOT_EMBEDDED);
+		}
+		return renderer;
+	}
+
+	/**
+	 * Parses the fonts into iText's font cache, once per JVM
+	 */
+	private static void loadFonts() throws DocumentException, IOException {
+		if (fontsLoaded) {
+			return;
+		}
+		synchronized (PDFRenderers.class) {
+			if (!fontsLoaded) {
+				for (String font : FONTS) {
+					BaseFont.createFont(font, BaseFont.IDENTITY_H, BaseFont.NOT_EMBEDDED, true, null, null);
+				}
+				fontsLoaded = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,573 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Image;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfWriter;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * PPTX to PDF Converter. Every slide is put on its own page, either as an
+ * image or drawn as vectors, see {@link SlideRenderMode}. Pages are written
+ * out as soon as their slide is drawn, so memory does not grow with the
+ * number of slides.
+ * 
+ * Slides can be drawn by a pool of worker threads. Every worker opens its own
+ * copy of the slide show, so no POI objects or Graphics2D state are shared
+ * between threads and the output is the same as with a single thread. Pages
+ * are still written in slide order, and at most
+ * {@link #getMaxSlidesInFlight()} drawn slides wait to be written
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class PPTXToPDFConverter {
+
+	private SlideRenderMode renderMode = SlideRenderMode.PNG;
+	private float jpegQuality = 0.9f;
+	private int flateLevel = Deflater.BEST_SPEED;
+	private int renderThreads = 1;
+	private int maxSlidesInFlight = 0;
+
+	// Time interrupted workers get to stop before their resources are released
+	static final long WORKER_STOP_SECONDS = 30;
+
+	// Image writers are not thread safe, keep one per thread and format
+	private final ThreadLocal<ImageWriter> pngWriter = new ThreadLocal<ImageWriter>();
+	private final ThreadLocal<ImageWriter> jpegWriter = new ThreadLocal<ImageWriter>();
+
+	public SlideRenderMode getRenderMode() {
+		return renderMode;
+	}
+
+	public void setRenderMode(SlideRenderMode renderMode) {
+		this.renderMode = renderMode;
+	}
+
+	public float getJpegQuality() {
+		return jpegQuality;
+	}
+
+	/**
+	 * @param jpegQuality
+	 *            Quality between 0 and 1 used by {@link SlideRenderMode#JPEG}
+	 */
+	public void setJpegQuality(float jpegQuality) {
+		if (jpegQuality < 0 || jpegQuality > 1) {
+			throw new IllegalArgumentException("jpegQuality must be between 0 and 1: " + jpegQuality);
+		}
+		this.jpegQuality = jpegQuality;
+	}
+
+	public int getFlateLevel() {
+		return flateLevel;
+	}
+
+	/**
+	 * @param flateLevel
+	 *            Deflater level between 1 and 9 used by
+	 *            {@link SlideRenderMode#FLATE}
+	 */
+	public void setFlateLevel(int flateLevel) {
+		if (flateLevel < Deflater.BEST_SPEED || flateLevel > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("flateLevel must be between 1 and 9: " + flateLevel);
+		}
+		this.flateLevel = flateLevel;
+	}
+
+	public int getRenderThreads() {
+		return renderThreads;
+	}
+
+	/**
+	 * @param renderThreads
+	 *            Number of threads drawing slides. 1 draws all slides on the
+	 *            calling thread. Ignored by {@link SlideRenderMode#VECTOR}
+	 */
+	public void setRenderThreads(int renderThreads) {
+		if (renderThreads < 1) {
+			throw new IllegalArgumentException("renderThreads must be at least 1: " + renderThreads);
+		}
+		this.renderThreads = renderThreads;
+	}
+
+	/**
+	 * @return maximum number of slides being drawn or waiting to be written,
+	 *         defaults to twice the number of render threads
+	 */
+	public int getMaxSlidesInFlight() {
+		return maxSlidesInFlight > 0 ? maxSlidesInFlight : 2 * renderThreads;
+	}
+
+	public void setMaxSlidesInFlight(int maxSlidesInFlight) {
+		this.maxSlidesInFlight = maxSlidesInFlight;
+	}
+
+	/**
+	 * Converts pptx to PDF file
+	 * 
+	 * @param inPath
+	 *            The input file path
+	 * @param outPath
+	 *            The output file path
+	 * @throws Exception
+	 */
+	public void convert(final String inPath, String outPath) throws Exception {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(outPath));
+		try {
+			convert(new SlideShowSource() {
+				@Override
+				public XMLSlideShow open() throws IOException {
+					//The zip is not inflated into memory first. XMLSlideShow
+					//still parses every slide when it is created
+					try {
+						return new XMLSlideShow(OPCPackage.open(new File(inPath), PackageAccess.READ));
+					} catch (InvalidFormatException e) {
+						throw new IOException(e);
+					}
+				}
+			}, out);
+		} finally {
+			out.close();
+		}
+		System.out.println("Saved: " + outPath);
+	}
+
+	/**
+	 * Converts pptx to PDF. With more than one render thread the input is
+	 * read into memory once, so every worker can open its own copy of it
+	 * 
+	 * @param in
+	 *            The pptx input, not closed
+	 * @param out
+	 *            The PDF output, not closed
+	 * @throws Exception
+	 */
+	public void convert(InputStream in, OutputStream out) throws Exception {
+		if (renderThreads == 1 || renderMode == SlideRenderMode.VECTOR) {
+			final XMLSlideShow ppt = new XMLSlideShow(in);
+			convert(new SlideShowSource() {
+				@Override
+				public XMLSlideShow open() {
+					return ppt;
+				}
+			}, out);
+			return;
+		}
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		byte[] chunk = new byte[64 * 1024];
+		int n;
+		while ((n = in.read(chunk)) != -1) {
+			buffer.write(chunk, 0, n);
+		}
+		final byte[] bytes = buffer.toByteArray();
+		convert(new SlideShowSource() {
+			@Override
+			public XMLSlideShow open() throws IOException {
+				return new XMLSlideShow(new ByteArrayInputStream(bytes));
+			}
+		}, out);
+	}
+
+	/**
+	 * Opens a copy of the slide show being converted
+	 */
+	private interface SlideShowSource {
+		XMLSlideShow open() throws IOException;
+	}
+
+	private void convert(SlideShowSource source, OutputStream out) throws Exception {
+
+		//Load file
+		ConversionMetrics.Phase phase = ConversionMetrics.startPhase("load");
+		XMLSlideShow inPPT;
+		try {
+			inPPT = source.open();
+		} finally {
+			phase.end();
+		}
+
+		//Dimesions
+		Dimension pgsize = inPPT.getPageSize();
+
+		//Setup document, the caller closes the stream
+		com.lowagie.text.Document document = new com.lowagie.text.Document();
+		PdfWriter writer = PdfWriter.getInstance(document, out);
+		writer.setCloseStream(false);
+
+		ConversionHandle handle = ConversionHandle.current();
+		try {
+			//Limits are checked before anything is drawn
+			if (handle != null) {
+				handle.checkSlideSize(pgsize.width, pgsize.height);
+				handle.check();
+			}
+
+			if (renderMode == SlideRenderMode.VECTOR) {
+				//Draw each slide onto its page
+				for (XSLFSlide slide : inPPT.getSlides()) {
+					if (handle != null) {
+						handle.addSlide();
+					}
+					phase = ConversionMetrics.startPhase("draw");
+					try {
+						writeVectorSlide(document, writer, slide, pgsize);
+					} finally {
+						phase.end();
+					}
+					countSlide();
+				}
+			} else if (renderThreads == 1) {
+				//Convert each slide into image
+				for (XSLFSlide slide : inPPT.getSlides()) {
+					if (handle != null) {
+						handle.addSlide();
+					}
+					Image img = renderSlide(slide, pgsize);
+					writeSlide(document, writer, img);
+					countSlide();
+				}
+			} else {
+				convertParallel(source, inPPT.getSlides().size(), pgsize, document, writer);
+			}
+		} finally {
+			close(inPPT);
+		}
+		document.close();
+	}
+
+	/**
+	 * Draws slides on the worker pool and writes them in slide order
+	 */
+	private void convertParallel(final SlideShowSource source, int slideCount, final Dimension pgsize,
+			com.lowagie.text.Document document, PdfWriter writer) throws Exception {
+		// Workers report to the conversion of the calling thread
+		final ConversionMetrics metrics = ConversionMetrics.current();
+		final ConversionHandle handle = ConversionHandle.current();
+
+		// Slide show copy of each worker thread
+		final ThreadLocal<XMLSlideShow> workerPPT = new ThreadLocal<XMLSlideShow>();
+		final List<XMLSlideShow> opened = Collections.synchronizedList(new ArrayList<XMLSlideShow>());
+
+		ExecutorService pool = Executors.newFixedThreadPool(renderThreads);
+		Deque<Future<Image>> inFlight = new ArrayDeque<Future<Image>>();
+		try {
+			for (int i = 0; i < slideCount; i++) {
+				if (inFlight.size() >= getMaxSlidesInFlight()) {
+					writeSlide(document, writer, await(inFlight.removeFirst()));
+					countSlide();
+				}
+				if (handle != null) {
+					handle.addSlide();
+				}
+				final int slideIndex = i;
+				inFlight.addLast(pool.submit(new Callable<Image>() {
+					@Override
+					public Image call() throws Exception {
+						ConversionMetrics previous = ConversionMetrics.attach(metrics);
+						ConversionHandle previousHandle = ConversionHandle.attach(handle);
+						try {
+							ConversionHandle.checkCurrent();
+							XMLSlideShow ppt = workerPPT.get();
+							if (ppt == null) {
+								ppt = source.open();
+								opened.add(ppt);
+								workerPPT.set(ppt);
+							}
+							return renderSlide(ppt.getSlides().get(slideIndex), pgsize);
+						} finally {
+							ConversionHandle.detach(previousHandle);
+							ConversionMetrics.detach(previous);
+						}
+					}
+				}));
+			}
+			while (!inFlight.isEmpty()) {
+				writeSlide(document, writer, await(inFlight.removeFirst()));
+				countSlide();
+			}
+		} finally {
+			pool.shutdownNow();
+			//Interrupted workers may still be drawing from their copy, only
+			//release the copies once every worker has stopped
+			if (awaitTermination(pool)) {
+				synchronized (opened) {
+					for (XMLSlideShow ppt : opened) {
+						close(ppt);
+					}
+				}
+			}
+			//Otherwise interrupted workers are left with their slide shows open
+		}
+	}
+
+	/**
+	 * Waits a bounded time for a shut down pool to finish its tasks
+	 * 
+	 * @return true if all tasks have finished
+	 */
+	static boolean awaitTermination(ExecutorService pool) {
+		try {
+			return pool.awaitTermination(WORKER_STOP_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Releases the package of a slide show. The packages are opened read only,
+	 * so there is nothing to save
+	 */
+	private static void close(XMLSlideShow ppt) {
+		ppt.getPackage().revert();
+	}
+
+	private static <T> T await(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Draws and encodes a slide, timing both for the current conversion
+	 */
+	private Image renderSlide(XSLFSlide slide, Dimension pgsize) throws IOException, DocumentException {
+		ConversionMetrics.Phase phase = ConversionMetrics.startPhase("draw");
+		BufferedImage slideImg;
+		try {
+			slideImg = drawSlide(slide, pgsize);
+		} finally {
+			phase.end();
+		}
+		phase = ConversionMetrics.startPhase("encode");
+		try {
+			return encodeSlide(slideImg);
+		} finally {
+			phase.end();
+		}
+	}
+
+	/**
+	 * Counts a written slide, each slide is one page
+	 */
+	private static void countSlide() {
+		ConversionMetrics metrics = ConversionMetrics.current();
+		if (metrics != null) {
+			metrics.addSlides(1);
+			metrics.addPages(1);
+		}
+	}
+
+	/**
+	 * Draws a slide into an image
+	 */
+	protected BufferedImage drawSlide(XSLFSlide slide, Dimension pgsize) {
+		BufferedImage slideImg = new BufferedImage(pgsize.width, pgsize.height, BufferedImage.TYPE_INT_RGB);
+
+		//G2D setup
+		Graphics2D g2d = slideImg.createGraphics();
+		g2d.setPaint(Color.white);
+		g2d.fill(new Rectangle2D.Float(0, 0, pgsize.width, pgsize.height));
+		g2d.clearRect(0, 0, pgsize.width, pgsize.height);
+
+		slide.draw(g2d);
+		g2d.dispose();
+		return slideImg;
+	}
+
+	/**
+	 * Turns a drawn slide into a PDF image according to the render mode
+	 * 
+	 * @throws IOException
+	 * @throws DocumentException
+	 */
+	protected Image encodeSlide(BufferedImage slideImg) throws IOException, DocumentException {
+		switch (renderMode) {
+			case PNG:
+				return Image.getInstance(writeImage(slideImg, pngWriter, "png", null));
+			case JPEG:
+				ImageWriter writer = getImageWriter(jpegWriter, "jpeg");
+				ImageWriteParam param = writer.getDefaultWriteParam();
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(jpegQuality);
+				return Image.getInstance(writeImage(slideImg, jpegWriter, "jpeg", param));
+			default:
+				return deflateImage(slideImg);
+		}
+	}
+
+	/**
+	 * Compresses the RGB pixels of the image row by row into a Flate image
+	 * stream, without going through an image file format
+	 */
+	private Image deflateImage(BufferedImage slideImg) throws IOException, DocumentException {
+		final int width = slideImg.getWidth();
+		final int height = slideImg.getHeight();
+		final int[] pixels = ((DataBufferInt) slideImg.getRaster().getDataBuffer()).getData();
+
+		ByteArrayOutputStream deflated = new ByteArrayOutputStream(width * height / 4);
+		Deflater deflater = new Deflater(flateLevel);
+		DeflaterOutputStream out = new DeflaterOutputStream(deflated, deflater, 64 * 1024);
+		byte[] row = new byte[width * 3];
+		for (int y = 0; y < height; y++) {
+			int p = y * width;
+			for (int x = 0, b = 0; x < width; x++, p++) {
+				int rgb = pixels[p];
+				row[b++] = (byte) (rgb >> 16);
+				row[b++] = (byte) (rgb >> 8);
+				row[b++] = (byte) rgb;
+			}
+			out.write(row);
+		}
+		out.close();
+		deflater.end();
+
+		Image img = Image.getInstance(width, height, 3, 8, deflated.toByteArray());
+		img.setDeflated(true);
+		return img;
+	}
+
+	private static byte[] writeImage(BufferedImage slideImg, ThreadLocal<ImageWriter> writers, String format,
+			ImageWriteParam param) throws IOException {
+		ImageWriter imageWriter = getImageWriter(writers, format);
+		ByteArrayOutputStream slideDrawn = new ByteArrayOutputStream();
+		ImageOutputStream outputStream = ImageIO.createImageOutputStream(slideDrawn);
+		try {
+			imageWriter.setOutput(outputStream);
+			imageWriter.write(null, new IIOImage(slideImg, null, null), param);
+		} finally {
+			imageWriter.reset();
+			outputStream.close();
+		}
+		return slideDrawn.toByteArray();
+	}
+
+	private static ImageWriter getImageWriter(ThreadLocal<ImageWriter> writers, String format) {
+		ImageWriter imageWriter = writers.get();
+		if (imageWriter == null) {
+			Iterator<ImageWriter> iterator = ImageIO.getImageWritersByFormatName(format);
+			if (!iterator.hasNext()) {
+				throw new IllegalStateException("Writers Not Found");
+			}
+			imageWriter = iterator.next();
+			writers.set(imageWriter);
+		}
+		return imageWriter;
+	}
+
+	/**
+	 * Puts a drawn slide on a new page of the size of the slide and writes it
+	 * out
+	 */
+	private void writeSlide(com.lowagie.text.Document document, PdfWriter writer, Image img)
+			throws DocumentException, IOException {
+		//Printing to PDF
+		ConversionMetrics.Phase phase = ConversionMetrics.startPhase("write");
+		try {
+			newPage(document, img.getWidth(), img.getHeight());
+			img.setAbsolutePosition(0, 0);
+			writer.getDirectContent().addImage(img);
+			writer.flush();
+		} finally {
+			phase.end();
+		}
+	}
+
+	/**
+	 * Draws a slide straight onto a new page through a PDF Graphics2D
+	 */
+	private void writeVectorSlide(com.lowagie.text.Document document, PdfWriter writer, XSLFSlide slide,
+			Dimension pgsize) throws DocumentException, IOException {
+		newPage(document, pgsize.width, pgsize.height);
+		PdfContentByte cb = writer.getDirectContent();
+		Graphics2D g2d = cb.createGraphics(pgsize.width, pgsize.height);
+		try {
+			g2d.setPaint(Color.white);
+			g2d.fill(new Rectangle2D.Float(0, 0, pgsize.width, pgsize.height));
+			slide.draw(g2d);
+		} finally {
+			g2d.dispose();
+		}
+		writer.flush();
+	}
+
+	private static void newPage(com.lowagie.text.Document document, float width, float height) {
+		document.setPageSize(new Rectangle(width, height));
+		if (document.isOpen()) {
+			document.newPage();
+		} else {
+			document.open();
+		}
+	}
+}
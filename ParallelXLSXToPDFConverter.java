@@ -0,0 +1,309 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.w3c.dom.Document;
+
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfReader;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Converts the sheets of an xlsx workbook in parallel. Every sheet is read
+ * with {@link XLSXStreamingReader}, converted to HTML by its own
+ * {@link XLSXToHTMLConverter} and rendered to a PDF segment on a worker
+ * thread. The segments are joined in sheet order into one PDF, with a
+ * bookmark per sheet.
+ * 
+ * Every worker opens its own copy of the package. At most
+ * {@link #getMaxSheetsInFlight()} sheets are being converted or waiting to be
+ * joined, which bounds memory by the number of workers rather than the
+ * number of sheets.
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class ParallelXLSXToPDFConverter {
+
+	// Time interrupted workers get to stop before their packages are released
+	private static final long WORKER_STOP_SECONDS = 30;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int maxSheetsInFlight = 0;
+	private boolean outputColumnHeader = false;
+	private boolean outputRowNumber = false;
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * @return maximum number of sheets being converted or waiting to be
+	 *         joined, defaults to twice the number of threads
+	 */
+	public int getMaxSheetsInFlight() {
+		return maxSheetsInFlight > 0 ? maxSheetsInFlight : 2 * threads;
+	}
+
+	public void setMaxSheetsInFlight(int maxSheetsInFlight) {
+		this.maxSheetsInFlight = maxSheetsInFlight;
+	}
+
+	public boolean isOutputColumnHeader() {
+		return outputColumnHeader;
+	}
+
+	public void setOutputColumnHeader(boolean outputColumnHeader) {
+		this.outputColumnHeader = outputColumnHeader;
+	}
+
+	public boolean isOutputRowNumber() {
+		return outputRowNumber;
+	}
+
+	public void setOutputRowNumber(boolean outputRowNumber) {
+		this.outputRowNumber = outputRowNumber;
+	}
+
+	/**
+	 * Converts xlsx to PDF file. The PDF is written under a temporary name
+	 * next to the output and renamed when complete, so a failed conversion
+	 * leaves no partial file
+	 * 
+	 * @param inPath
+	 *            The input file path
+	 * @param outPath
+	 *            The output file path
+	 * @throws IOException
+	 *             If the workbook has no sheet, so there are no pages to
+	 *             write
+	 * @throws Exception
+	 */
+	public void convert(String inPath, String outPath) throws Exception {
+		OPCPackage pkg = OPCPackage.open(new File(inPath), PackageAccess.READ);
+		List<String> sheetNames;
+		try {
+			sheetNames = new XLSXStreamingReader(pkg).getSheetNames();
+		} finally {
+			pkg.revert();
+		}
+
+		File outFile = new File(outPath).getAbsoluteFile();
+		File tmp = File.createTempFile(outFile.getName(), ".tmp", outFile.getParentFile());
+		try {
+			convert(inPath, sheetNames, tmp);
+			Files.move(tmp.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+		System.out.println("Saved: " + outPath);
+	}
+
+	private void convert(final String inPath, List<String> sheetNames, File outFile) throws Exception {
+		// Reader of each worker thread, on its own copy of the package
+		final ThreadLocal<XLSXStreamingReader> workerReader = new ThreadLocal<XLSXStreamingReader>();
+		final List<OPCPackage> opened = Collections.synchronizedList(new ArrayList<OPCPackage>());
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(outFile));
+		com.lowagie.text.Document document = new com.lowagie.text.Document();
+		PdfCopy copy = new PdfCopy(document, out);
+		List<HashMap<String, Object>> bookmarks = new ArrayList<HashMap<String, Object>>();
+
+		// Workers report to the conversion of the calling thread
+		final ConversionMetrics metrics = ConversionMetrics.current();
+		final ConversionHandle handle = ConversionHandle.current();
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Deque<Future<byte[]>> inFlight = new ArrayDeque<Future<byte[]>>();
+		try {
+			int joined = 0;
+			for (int s = 0; s < sheetNames.size(); s++) {
+				if (inFlight.size() >= getMaxSheetsInFlight()) {
+					join(document, copy, bookmarks, sheetNames.get(joined), await(inFlight.removeFirst()));
+					joined++;
+				}
+				final int sheetIndex = s;
+				inFlight.addLast(pool.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws Exception {
+						ConversionMetrics previous = ConversionMetrics.attach(metrics);
+						ConversionHandle previousHandle = ConversionHandle.attach(handle);
+						try {
+							XLSXStreamingReader reader = workerReader.get();
+							if (reader == null) {
+								OPCPackage workerPkg = OPCPackage.open(new File(inPath), PackageAccess.READ);
+								opened.add(workerPkg);
+								reader = new XLSXStreamingReader(workerPkg);
+								workerReader.set(reader);
+							}
+							return convertSheet(reader, sheetIndex);
+						} finally {
+							ConversionHandle.detach(previousHandle);
+							ConversionMetrics.detach(previous);
+						}
+					}
+				}));
+			}
+			while (!inFlight.isEmpty()) {
+				join(document, copy, bookmarks, sheetNames.get(joined), await(inFlight.removeFirst()));
+				joined++;
+			}
+			if (!document.isOpen()) {
+				// Nothing was written, the file is not a valid PDF
+				throw new IOException("No pages to write: " + inPath);
+			}
+			if (!bookmarks.isEmpty()) {
+				copy.setOutlines(bookmarks);
+			}
+		} finally {
+			pool.shutdownNow();
+			//Interrupted workers may still be reading their package, only
+			//release the packages once every worker has stopped
+			if (awaitTermination(pool)) {
+				synchronized (opened) {
+					for (OPCPackage workerPkg : opened) {
+						workerPkg.revert();
+					}
+				}
+			}
+			//Otherwise interrupted workers are left with their packages open
+			try {
+				if (document.isOpen()) {
+					document.close();
+				}
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Waits a bounded time for a shut down pool to finish its tasks
+	 * 
+	 * @return true if all tasks have finished
+	 */
+	private static boolean awaitTermination(ExecutorService pool) {
+		try {
+			return pool.awaitTermination(WORKER_STOP_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Converts one sheet to a PDF segment
+	 */
+	private byte[] convertSheet(XLSXStreamingReader reader, int sheetIndex) throws Exception {
+		XLSXToHTMLConverter converter = new XLSXToHTMLConverter(
+				XMLHelper.getDocumentBuilderFactory().newDocumentBuilder().newDocument());
+		converter.setOutputColumnHeaders(outputColumnHeader);
+		converter.setOutputRowNumbers(outputRowNumber);
+		ConversionMetrics.Phase phase = ConversionMetrics.startPhase("html");
+		try {
+			reader.readSheet(converter, sheetIndex);
+		} finally {
+			phase.end();
+		}
+		Document html = converter.getDocument();
+
+		ByteArrayOutputStream segment = new ByteArrayOutputStream();
+		Converter.htmlToPDF(html, segment);
+		return segment.toByteArray();
+	}
+
+	/**
+	 * Appends the pages of a segment to the PDF and bookmarks its first page
+	 */
+	private static void join(com.lowagie.text.Document document, PdfCopy copy,
+			List<HashMap<String, Object>> bookmarks, String sheetName, byte[] segment) throws Exception {
+		ConversionHandle.checkCurrent();
+		ConversionMetrics.Phase phase = ConversionMetrics.startPhase("join");
+		try {
+			joinSegment(document, copy, bookmarks, sheetName, segment);
+		} finally {
+			phase.end();
+		}
+	}
+
+	private static void joinSegment(com.lowagie.text.Document document, PdfCopy copy,
+			List<HashMap<String, Object>> bookmarks, String sheetName, byte[] segment) throws Exception {
+		PdfReader reader = new PdfReader(segment);
+		if (!document.isOpen()) {
+			document.open();
+		}
+		HashMap<String, Object> bookmark = new HashMap<String, Object>();
+		bookmark.put("Title", sheetName);
+		bookmark.put("Action", "GoTo");
+		bookmark.put("Page", copy.getCurrentPageNumber() + " Fit");
+		bookmarks.add(bookmark);
+		for (int p = 1; p <= reader.getNumberOfPages(); p++) {
+			copy.addPage(copy.getImportedPage(reader, p));
+		}
+		copy.freeReader(reader);
+		reader.close();
+	}
+
+	private static <T> T await(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+}
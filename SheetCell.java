@@ -0,0 +1,118 @@
+import org.apache.poi.ss.usermodel.CellType;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * Value of a single spreadsheet cell, detached from the POI usermodel.
+ * 
+ * Filled either from an XSSFCell or directly from the sheet XML by
+ * {@link XLSXStreamingReader}, so both paths share the same rendering code in
+ * {@link XLSXToHTMLConverter}. Instances are reused from row to row by
+ * {@link SheetRow}
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class SheetCell {
+
+	private CellType cellType = CellType.BLANK;
+	private CellType cachedFormulaResultType = CellType.BLANK;
+	private String stringValue = "";
+	private double numericValue;
+	private boolean booleanValue;
+	private int styleIndex;
+
+	/**
+	 * Clears the cell so it can be reused for another cell of the sheet
+	 */
+	public void reset() {
+		cellType = CellType.BLANK;
+		cachedFormulaResultType = CellType.BLANK;
+		stringValue = "";
+		numericValue = 0;
+		booleanValue = false;
+		styleIndex = 0;
+	}
+
+	public CellType getCellType() {
+		return cellType;
+	}
+
+	public void setCellType(CellType cellType) {
+		this.cellType = cellType;
+	}
+
+	/**
+	 * @return type of the cached result, only meaningful for FORMULA cells
+	 */
+	public CellType getCachedFormulaResultType() {
+		return cachedFormulaResultType;
+	}
+
+	public void setCachedFormulaResultType(CellType cachedFormulaResultType) {
+		this.cachedFormulaResultType = cachedFormulaResultType;
+	}
+
+	/**
+	 * @return text of STRING cells, cached text of FORMULA cells and error
+	 *         text (e.g. "#DIV/0!") of ERROR cells. Never null
+	 */
+	public String getStringValue() {
+		return stringValue;
+	}
+
+	public void setStringValue(String stringValue) {
+		this.stringValue = stringValue == null ? "" : stringValue;
+	}
+
+	public double getNumericValue() {
+		return numericValue;
+	}
+
+	public void setNumericValue(double numericValue) {
+		this.numericValue = numericValue;
+	}
+
+	public boolean getBooleanValue() {
+		return booleanValue;
+	}
+
+	public void setBooleanValue(boolean booleanValue) {
+		this.booleanValue = booleanValue;
+	}
+
+	/**
+	 * @return index of the cell style in the workbook styles table, 0 for the
+	 *         default style
+	 */
+	public int getStyleIndex() {
+		return styleIndex;
+	}
+
+	public void setStyleIndex(int styleIndex) {
+		this.styleIndex = styleIndex;
+	}
+}
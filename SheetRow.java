@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * One row window of a sheet. Holds the cells of the row currently being
+ * converted, and is refilled for every row so memory stays bounded by the
+ * widest row instead of the whole sheet.
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class SheetRow {
+
+	private int rowNum;
+	private short height;
+	private boolean zeroHeight;
+
+	private SheetCell[] pool = new SheetCell[16];
+	private SheetCell[] cells = new SheetCell[16];
+	private int lastCellNum;
+	private int cellCount;
+
+	/**
+	 * Starts a new row, dropping all cells of the previous one
+	 * 
+	 * @param rowNum
+	 *            0-based row index
+	 * @param height
+	 *            Row height in twips (1/20 pt)
+	 * @param zeroHeight
+	 *            If the row is hidden
+	 */
+	public void reset(int rowNum, short height, boolean zeroHeight) {
+		Arrays.fill(cells, 0, lastCellNum, null);
+		this.rowNum = rowNum;
+		this.height = height;
+		this.zeroHeight = zeroHeight;
+		this.lastCellNum = 0;
+		this.cellCount = 0;
+	}
+
+	/**
+	 * Adds a cell to the row, reusing a previously allocated instance
+	 * 
+	 * @param colIx
+	 *            0-based column index
+	 * @return a blank cell to be filled by the caller
+	 */
+	public SheetCell addCell(int colIx) {
+		if (colIx >= pool.length) {
+			int newLength = Math.max(colIx + 1, pool.length * 2);
+			pool = Arrays.copyOf(pool, newLength);
+			cells = Arrays.copyOf(cells, newLength);
+		}
+		SheetCell cell = pool[colIx];
+		if (cell == null) {
+			cell = new SheetCell();
+			pool[colIx] = cell;
+		} else {
+			cell.reset();
+		}
+		if (cells[colIx] == null) {
+			cellCount++;
+		}
+		cells[colIx] = cell;
+		lastCellNum = Math.max(lastCellNum, colIx + 1);
+		return cell;
+	}
+
+	/**
+	 * @return the cell at the given column or null if the row does not
+	 *         contain it
+	 */
+	public SheetCell getCell(int colIx) {
+		if (colIx < 0 || colIx >= lastCellNum) {
+			return null;
+		}
+		return cells[colIx];
+	}
+
+	/**
+	 * @return 0-based row index
+	 */
+	public int getRowNum() {
+		return rowNum;
+	}
+
+	/**
+	 * @return row height in twips (1/20 pt)
+	 */
+	public short getHeight() {
+		return height;
+	}
+
+	public boolean getZeroHeight() {
+		return zeroHeight;
+	}
+
+	/**
+	 * @return number of cells contained in this row
+	 */
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * @return 1-based index of the last cell contained in this row, 0 if the
+	 *         row is empty
+	 */
+	public int getLastCellNum() {
+		return lastCellNum;
+	}
+}
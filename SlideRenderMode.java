@@ -0,0 +1,59 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * How {@link PPTXToPDFConverter} puts slides into the PDF
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public enum SlideRenderMode {
+
+	/**
+	 * Slide image encoded as PNG, then decoded again by iText. The default,
+	 * slower than {@link #FLATE} but with smaller output
+	 */
+	PNG,
+
+	/**
+	 * Raw RGB pixels of the slide image, Flate compressed straight into the
+	 * PDF image stream. Lossless, same pixels as PNG. Much faster to encode,
+	 * but the default {@link PPTXToPDFConverter#setFlateLevel(int) level}
+	 * gives larger files than PNG
+	 */
+	FLATE,
+
+	/**
+	 * Slide image encoded as JPEG and embedded as is. Lossy, smallest output
+	 * for photo-heavy decks. See {@link PPTXToPDFConverter#setJpegQuality(float)}
+	 */
+	JPEG,
+
+	/**
+	 * Slide drawn through a PDF Graphics2D, so shapes stay vectors and text
+	 * stays text. Slides are drawn on the writing thread
+	 */
+	VECTOR
+}
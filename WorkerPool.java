@@ -0,0 +1,490 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Supervisor of a pool of {@link ConverterWorker} child JVMs. A leaking or
+ * crashing renderer then only takes down its own worker.
+ * 
+ * Workers are started ahead of use, so fonts and templates are loaded
+ * before their first job. A worker converts one file at a time. It is
+ * replaced after {@link #setMaxJobsPerWorker(int) a number of jobs}, when
+ * its heap grows past {@link #setMaxHeapBytes(long) a threshold}, when it
+ * dies, and when a job runs past its deadline. In the last case the worker
+ * is killed, because a renderer can not always be stopped from inside.
+ * 
+ * Several threads may call {@link #convert} at the same time, each call
+ * waits for an idle worker
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class WorkerPool {
+
+	// Pushed by a worker's reader thread when the worker's stdout closes
+	private static final String EOF = "\u0000EOF";
+
+	// Interval at which a caller waiting for a worker checks the pool
+	private static final long POLL_MILLIS = 500;
+
+	private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	private String javaCommand = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+	private String classPath = System.getProperty("java.class.path");
+	private List<String> jvmArgs = new ArrayList<String>();
+	private int maxJobsPerWorker = 200;
+	private long maxHeapBytes = -1;
+	private long timeoutMillis = -1;
+	// Time a killed worker gets after the deadline to stop on its own
+	private long killGraceMillis = 2000;
+	private long startTimeoutMillis = 60000;
+
+	private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<Worker>();
+	private final List<Worker> all = Collections.synchronizedList(new ArrayList<Worker>());
+	private volatile boolean started;
+	private volatile boolean shutDown;
+
+	/**
+	 * A child JVM and the lines it wrote
+	 */
+	private class Worker {
+
+		private final Process process;
+		private final Writer requests;
+		private final BlockingQueue<String> replies = new LinkedBlockingQueue<String>();
+		private boolean ready;
+		private int jobs;
+		// Set while a job holds the worker, guarded by the pool
+		private boolean busy;
+
+		Worker() throws IOException {
+			List<String> command = new ArrayList<String>();
+			command.add(javaCommand);
+			command.addAll(jvmArgs);
+			command.add("-cp");
+			command.add(classPath);
+			command.add(ConverterWorker.class.getName());
+			ProcessBuilder builder = new ProcessBuilder(command);
+			builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+			process = builder.start();
+			requests = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+
+			final BufferedReader out = new BufferedReader(
+					new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+			Thread reader = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						String line;
+						while ((line = out.readLine()) != null) {
+							replies.add(line);
+						}
+					} catch (IOException e) {
+						// Worker gone
+					}
+					replies.add(EOF);
+				}
+			}, "worker-reader");
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		/**
+		 * @return the next line of the worker, EOF if it died, null on
+		 *         timeout
+		 */
+		String[] receive(long timeoutMillis) throws InterruptedException {
+			String line = timeoutMillis < 0 ? replies.take() : replies.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+			if (line == null) {
+				return null;
+			}
+			return EOF.equals(line) ? new String[] { EOF } : ConverterWorker.decode(line);
+		}
+
+		void send(String... fields) throws IOException {
+			requests.write(ConverterWorker.encode(fields));
+			requests.write('\n');
+			requests.flush();
+		}
+
+		void kill() {
+			process.destroyForcibly();
+		}
+
+		void quit() {
+			try {
+				send(ConverterWorker.QUIT);
+			} catch (IOException e) {
+				// Already gone
+			}
+			try {
+				if (!process.waitFor(killGraceMillis, TimeUnit.MILLISECONDS)) {
+					kill();
+				}
+			} catch (InterruptedException e) {
+				kill();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * @param workers
+	 *            Number of child JVMs, set before {@link #start()}
+	 */
+	public void setWorkers(int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("workers must be at least 1: " + workers);
+		}
+		this.workers = workers;
+	}
+
+	public String getJavaCommand() {
+		return javaCommand;
+	}
+
+	public void setJavaCommand(String javaCommand) {
+		this.javaCommand = javaCommand;
+	}
+
+	public String getClassPath() {
+		return classPath;
+	}
+
+	/**
+	 * @param classPath
+	 *            Class path of the workers, defaults to the class path of
+	 *            this JVM
+	 */
+	public void setClassPath(String classPath) {
+		this.classPath = classPath;
+	}
+
+	public List<String> getJvmArgs() {
+		return jvmArgs;
+	}
+
+	/**
+	 * @param jvmArgs
+	 *            Options of the workers, e.g. -Xmx1g
+	 */
+	public void setJvmArgs(List<String> jvmArgs) {
+		this.jvmArgs = new ArrayList<String>(jvmArgs);
+	}
+
+	public int getMaxJobsPerWorker() {
+		return maxJobsPerWorker;
+	}
+
+	/**
+	 * @param maxJobsPerWorker
+	 *            Jobs after which a worker is replaced, -1 for never
+	 */
+	public void setMaxJobsPerWorker(int maxJobsPerWorker) {
+		this.maxJobsPerWorker = maxJobsPerWorker;
+	}
+
+	public long getMaxHeapBytes() {
+		return maxHeapBytes;
+	}
+
+	/**
+	 * @param maxHeapBytes
+	 *            Heap still used after a job and a garbage collection above
+	 *            which a worker is replaced, -1 for no limit
+	 */
+	public void setMaxHeapBytes(long maxHeapBytes) {
+		this.maxHeapBytes = maxHeapBytes;
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * @param timeoutMillis
+	 *            Time a job may take, -1 for no limit. The worker gets the
+	 *            deadline as well and usually stops on its own; if it has not
+	 *            replied shortly after, it is killed
+	 */
+	public void setTimeoutMillis(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public long getStartTimeoutMillis() {
+		return startTimeoutMillis;
+	}
+
+	/**
+	 * @param startTimeoutMillis
+	 *            Time a new worker may take to load fonts and templates
+	 */
+	public void setStartTimeoutMillis(long startTimeoutMillis) {
+		this.startTimeoutMillis = startTimeoutMillis;
+	}
+
+	/**
+	 * Starts the workers. They load in the background, {@link #convert}
+	 * waits for them
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void start() throws IOException {
+		if (started) {
+			return;
+		}
+		started = true;
+		fill();
+	}
+
+	/**
+	 * Starts workers until there are as many as configured. A worker that
+	 * can not be started is tried again when a job next waits for a worker
+	 * 
+	 * @throws IOException
+	 *             If a worker could not be started and no worker is left
+	 */
+	private synchronized void fill() throws IOException {
+		while (!shutDown && all.size() < workers) {
+			try {
+				idle.add(spawn());
+			} catch (IOException e) {
+				if (all.isEmpty()) {
+					throw new IOException("No worker could be started", e);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Waits for an idle worker, starting missing workers meanwhile
+	 * 
+	 * @throws IllegalStateException
+	 *             If the pool is shut down
+	 */
+	private Worker take() throws IOException, InterruptedException {
+		while (true) {
+			if (shutDown) {
+				throw new IllegalStateException("Worker pool is shut down");
+			}
+			fill();
+			Worker worker = idle.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			if (worker != null) {
+				// Locked so that shutdown() either stops the worker or leaves
+				// it to this job
+				synchronized (this) {
+					if (shutDown) {
+						throw new IllegalStateException("Worker pool is shut down");
+					}
+					worker.busy = true;
+				}
+				return worker;
+			}
+		}
+	}
+
+	/**
+	 * Returns a worker after its job, or stops it if the pool was shut down
+	 * meanwhile
+	 */
+	private void release(Worker worker) {
+		synchronized (this) {
+			worker.busy = false;
+			if (!shutDown) {
+				idle.add(worker);
+				return;
+			}
+			all.remove(worker);
+		}
+		worker.quit();
+	}
+
+	private Worker spawn() throws IOException {
+		Worker worker = new Worker();
+		all.add(worker);
+		return worker;
+	}
+
+	/**
+	 * Stops a worker and starts its replacement. If the replacement can not
+	 * be started, the next {@link #take()} tries again and fails if no worker
+	 * is left
+	 */
+	private void replace(Worker worker, boolean kill) {
+		if (kill) {
+			worker.kill();
+		} else {
+			worker.quit();
+		}
+		synchronized (this) {
+			all.remove(worker);
+		}
+		try {
+			fill();
+		} catch (IOException e) {
+			// Reported by take()
+		}
+	}
+
+	/**
+	 * Converts a file in a worker. The format is taken from the file name
+	 * 
+	 * @param input
+	 *            The input file
+	 * @param output
+	 *            The PDF file
+	 * @param mainFontUsed
+	 *            Main font of docx files, see
+	 *            {@link Converter#docxToPDF(String, String, String)}
+	 * @param outputColumnHeader
+	 *            Column headers for xlsx
+	 * @param outputRowNumber
+	 *            Row numbers for xlsx
+	 * @throws IOException
+	 *             If the conversion failed, the worker died or no worker
+	 *             could be started
+	 * @throws ConversionAbortedException
+	 *             If the job ran past the deadline or hit a limit
+	 * @throws InterruptedException
+	 * @throws IllegalStateException
+	 *             If the pool is shut down, also while waiting for a worker
+	 */
+	public void convert(File input, File output, String mainFontUsed, boolean outputColumnHeader,
+			boolean outputRowNumber) throws IOException, InterruptedException {
+		DocumentFormat format = DocumentFormat.fromFileName(input.getName());
+		if (format == null) {
+			throw new IllegalArgumentException("Unsupported file type: " + input);
+		}
+		if (!started) {
+			start();
+		}
+
+		Worker worker = take();
+		boolean returned = false;
+		// Set while a request was sent but its reply not read
+		boolean pending = false;
+		try {
+			if (!worker.ready) {
+				String[] ready = worker.receive(startTimeoutMillis);
+				if (ready == null || !ConverterWorker.READY.equals(ready[0])) {
+					replace(worker, true);
+					returned = true;
+					throw new IOException("Worker did not start: " + (ready == null ? "timeout" : ready[0]));
+				}
+				worker.ready = true;
+			}
+
+			pending = true;
+			worker.send(ConverterWorker.CONVERT, format.name(), input.getAbsolutePath(), output.getAbsolutePath(),
+					String.valueOf(timeoutMillis), mainFontUsed, String.valueOf(outputColumnHeader),
+					String.valueOf(outputRowNumber));
+			String[] reply = worker.receive(timeoutMillis < 0 ? -1 : timeoutMillis + killGraceMillis);
+			worker.jobs++;
+
+			if (reply == null) {
+				replace(worker, true);
+				returned = true;
+				throw new ConversionAbortedException(ConversionAbortedException.Reason.DEADLINE,
+						"Worker killed after " + timeoutMillis + "ms: " + input);
+			}
+			if (EOF.equals(reply[0])) {
+				replace(worker, true);
+				returned = true;
+				throw new IOException("Worker died converting " + input);
+			}
+			pending = false;
+
+			long usedHeap = reply.length > 1 ? Long.parseLong(reply[1]) : -1;
+			boolean fatal = reply.length > 2 && ConverterWorker.FATAL.equals(reply[2]);
+			if (fatal || (maxJobsPerWorker > 0 && worker.jobs >= maxJobsPerWorker)
+					|| (maxHeapBytes >= 0 && usedHeap > maxHeapBytes)) {
+				replace(worker, fatal);
+				returned = true;
+			}
+
+			if (ConverterWorker.FAIL.equals(reply[0])) {
+				String reason = reply.length > 2 ? reply[2] : ConverterWorker.ERROR;
+				String message = reply.length > 3 ? reply[3] : "";
+				for (ConversionAbortedException.Reason aborted : ConversionAbortedException.Reason.values()) {
+					if (aborted.name().equals(reason)) {
+						throw new ConversionAbortedException(aborted, message);
+					}
+				}
+				throw new IOException("Conversion of " + input + " failed: " + message);
+			}
+		} finally {
+			if (!returned) {
+				if (pending) {
+					// Interrupted or failed to write: the worker may still be
+					// converting and its reply would go to the next job
+					replace(worker, true);
+				} else {
+					release(worker);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the idle workers, waiting briefly for each to exit. Workers
+	 * converting a file finish their job and stop when it is done; callers
+	 * waiting for a worker get an {@link IllegalStateException}
+	 */
+	public void shutdown() {
+		List<Worker> workers = new ArrayList<Worker>();
+		// Locked so that no worker is started or taken after the list is taken
+		synchronized (this) {
+			shutDown = true;
+			for (Iterator<Worker> it = all.iterator(); it.hasNext();) {
+				Worker worker = it.next();
+				if (!worker.busy) {
+					workers.add(worker);
+					it.remove();
+				}
+			}
+			idle.clear();
+		}
+		for (Worker worker : workers) {
+			worker.quit();
+		}
+	}
+}
@@ -0,0 +1,405 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.xmlbeans.XmlException;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTSheet;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.WorkbookDocument;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * Reads an XLSX workbook with the XSSF event API and feeds it row by row to
+ * {@link XLSXToHTMLConverter}, without building XSSFWorkbook.
+ * 
+ * Every sheet is read twice: once for the column definitions and merged
+ * regions (merged regions are stored after the cell data), and once for the
+ * rows. If the converter writes to a stream, rows are read one more time to
+ * measure the table before it is written. Only the shared strings table, the
+ * styles table and one row are kept in memory
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class XLSXStreamingReader {
+
+	private final OPCPackage pkg;
+
+	// Workbook level parts, read on first use
+	private XSSFReader reader;
+	private ReadOnlySharedStringsTable sharedStrings;
+	private StylesTable styles;
+	private CTWorkbook workbook;
+
+	public XLSXStreamingReader(OPCPackage pkg) {
+		this.pkg = pkg;
+	}
+
+	private void open() throws IOException, SAXException, OpenXML4JException {
+		if (reader == null) {
+			reader = new XSSFReader(pkg);
+			sharedStrings = new ReadOnlySharedStringsTable(pkg);
+			styles = reader.getStylesTable();
+			workbook = readWorkbook(reader);
+		}
+	}
+
+	/**
+	 * @return names of the sheets, in workbook order
+	 * @throws IOException
+	 * @throws SAXException
+	 * @throws OpenXML4JException
+	 */
+	public List<String> getSheetNames() throws IOException, SAXException, OpenXML4JException {
+		open();
+		List<String> names = new ArrayList<String>();
+		for (CTSheet sheet : workbook.getSheets().getSheetArray()) {
+			names.add(sheet.getName());
+		}
+		return names;
+	}
+
+	/**
+	 * Reads all sheets of the workbook into the converter
+	 * 
+	 * @param converter
+	 *            The converter to feed
+	 * @throws IOException
+	 * @throws SAXException
+	 * @throws OpenXML4JException
+	 * @throws ParserConfigurationException
+	 */
+	public void read(XLSXToHTMLConverter converter)
+			throws IOException, SAXException, OpenXML4JException, ParserConfigurationException {
+		open();
+		beginWorkbook(converter);
+		for (CTSheet sheet : workbook.getSheets().getSheetArray()) {
+			readSheet(converter, sheet);
+		}
+		converter.endWorkbook();
+	}
+
+	/**
+	 * Reads one sheet of the workbook into the converter, as a workbook of
+	 * its own
+	 * 
+	 * @param converter
+	 *            The converter to feed
+	 * @param sheetIndex
+	 *            0-based index of the sheet
+	 * @throws IOException
+	 * @throws SAXException
+	 * @throws OpenXML4JException
+	 * @throws ParserConfigurationException
+	 */
+	public void readSheet(XLSXToHTMLConverter converter, int sheetIndex)
+			throws IOException, SAXException, OpenXML4JException, ParserConfigurationException {
+		open();
+		beginWorkbook(converter);
+		readSheet(converter, workbook.getSheets().getSheetArray(sheetIndex));
+		converter.endWorkbook();
+	}
+
+	private void beginWorkbook(XLSXToHTMLConverter converter) {
+		converter.beginWorkbook(styles,
+				workbook.isSetWorkbookPr() && workbook.getWorkbookPr().getDate1904());
+	}
+
+	private void readSheet(XLSXToHTMLConverter converter, CTSheet sheet)
+			throws IOException, SAXException, OpenXML4JException, ParserConfigurationException {
+		SheetMetadata metadata = new SheetMetadata();
+		parse(reader, sheet.getId(), new MetadataHandler(metadata));
+
+		converter.beginSheet(sheet.getName(), metadata.rowCount, metadata.mergedRegions, metadata);
+		if (metadata.rowCount > 0) {
+			if (converter.isMeasurePassRequired()) {
+				parse(reader, sheet.getId(), new RowHandler(converter, sharedStrings, metadata, true));
+			}
+			converter.startSheetRows();
+			parse(reader, sheet.getId(), new RowHandler(converter, sharedStrings, metadata, false));
+		}
+		converter.endSheet();
+	}
+
+	private static CTWorkbook readWorkbook(XSSFReader reader) throws IOException, OpenXML4JException {
+		InputStream workbookData = reader.getWorkbookData();
+		try {
+			return WorkbookDocument.Factory.parse(workbookData).getWorkbook();
+		} catch (XmlException e) {
+			throw new IOException("Unable to read workbook", e);
+		} finally {
+			workbookData.close();
+		}
+	}
+
+	private static void parse(XSSFReader reader, String relId, ContentHandler handler)
+			throws IOException, SAXException, OpenXML4JException, ParserConfigurationException {
+		InputStream sheetData = reader.getSheet(relId);
+		try {
+			XMLReader parser = SAXHelper.newXMLReader();
+			parser.setContentHandler(handler);
+			parser.parse(new InputSource(sheetData));
+		} finally {
+			sheetData.close();
+		}
+	}
+
+	private static boolean isTrue(String value) {
+		return "1".equals(value) || "true".equals(value);
+	}
+
+	/**
+	 * Sheet properties stored outside of the sheet data
+	 */
+	private static class SheetMetadata implements SheetColumns {
+
+		private final List<int[]> columnRanges = new ArrayList<int[]>();
+		private final List<Double> columnWidths = new ArrayList<Double>();
+		private final List<Boolean> columnHidden = new ArrayList<Boolean>();
+		private final List<CellRangeAddress> mergedRegions = new ArrayList<CellRangeAddress>();
+		private double defaultRowHeight;
+		private int baseColumnWidth = 8;
+		private int rowCount;
+
+		/**
+		 * @return index of the COL definition containing the column, -1 if
+		 *         none
+		 */
+		private int findColumn(int columnIndex) {
+			for (int i = 0; i < columnRanges.size(); i++) {
+				int[] range = columnRanges.get(i);
+				if (range[0] <= columnIndex && columnIndex <= range[1]) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public boolean isColumnHidden(int columnIndex) {
+			int i = findColumn(columnIndex);
+			return i >= 0 && columnHidden.get(i);
+		}
+
+		@Override
+		public int getColumnWidth(int columnIndex) {
+			int i = findColumn(columnIndex);
+			double width = i < 0 || columnWidths.get(i) == null ? baseColumnWidth : columnWidths.get(i);
+			return (int) (width * 256);
+		}
+	}
+
+	/**
+	 * Collects column definitions, default sizes, row count and merged
+	 * regions of a sheet
+	 */
+	private static class MetadataHandler extends DefaultHandler {
+
+		private final SheetMetadata metadata;
+
+		MetadataHandler(SheetMetadata metadata) {
+			this.metadata = metadata;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if ("row".equals(localName)) {
+				metadata.rowCount++;
+			} else if ("col".equals(localName)) {
+				// COL min and max are 1-based
+				int min = Integer.parseInt(attributes.getValue("min")) - 1;
+				int max = Integer.parseInt(attributes.getValue("max")) - 1;
+				String width = attributes.getValue("width");
+				metadata.columnRanges.add(new int[] { min, max });
+				metadata.columnWidths.add(width == null ? null : Double.valueOf(width));
+				metadata.columnHidden.add(isTrue(attributes.getValue("hidden")));
+			} else if ("sheetFormatPr".equals(localName)) {
+				String defaultRowHeight = attributes.getValue("defaultRowHeight");
+				if (defaultRowHeight != null) {
+					metadata.defaultRowHeight = Double.parseDouble(defaultRowHeight);
+				}
+				String baseColWidth = attributes.getValue("baseColWidth");
+				if (baseColWidth != null) {
+					metadata.baseColumnWidth = Integer.parseInt(baseColWidth);
+				}
+			} else if ("mergeCell".equals(localName)) {
+				metadata.mergedRegions.add(CellRangeAddress.valueOf(attributes.getValue("ref")));
+			}
+		}
+	}
+
+	/**
+	 * Reads sheet data into a {@link SheetRow} and passes every completed row
+	 * to the converter, either to be measured or to be converted
+	 */
+	private static class RowHandler extends DefaultHandler {
+
+		private final XLSXToHTMLConverter converter;
+		private final ReadOnlySharedStringsTable sharedStrings;
+		private final short defaultRowHeight;
+		private final boolean measure;
+		private final SheetRow row = new SheetRow();
+		private final StringBuilder value = new StringBuilder();
+
+		private boolean inRow;
+		private int rowNum = -1;
+		private int colIx;
+
+		// Current cell
+		private String cellType;
+		private int styleIndex;
+		private boolean formula;
+		private boolean hasValue;
+		private boolean inValue;
+		private boolean inInlineString;
+		private boolean inPhonetic;
+
+		RowHandler(XLSXToHTMLConverter converter, ReadOnlySharedStringsTable sharedStrings, SheetMetadata metadata,
+				boolean measure) {
+			this.converter = converter;
+			this.measure = measure;
+			this.sharedStrings = sharedStrings;
+			this.defaultRowHeight = (short) ((float) metadata.defaultRowHeight * 20);
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if ("row".equals(localName)) {
+				String r = attributes.getValue("r");
+				rowNum = r == null ? rowNum + 1 : Integer.parseInt(r) - 1;
+				String ht = attributes.getValue("ht");
+				short height = ht == null ? defaultRowHeight : (short) (Float.parseFloat(ht) * 20);
+				row.reset(rowNum, height, isTrue(attributes.getValue("hidden")));
+				inRow = true;
+				colIx = -1;
+			} else if (inRow && "c".equals(localName)) {
+				String r = attributes.getValue("r");
+				colIx = r == null ? colIx + 1 : new CellReference(r).getCol();
+				cellType = attributes.getValue("t");
+				String s = attributes.getValue("s");
+				styleIndex = s == null ? 0 : Integer.parseInt(s);
+				formula = false;
+				hasValue = false;
+				value.setLength(0);
+			} else if ("f".equals(localName)) {
+				formula = true;
+			} else if ("v".equals(localName)) {
+				inValue = true;
+				hasValue = true;
+			} else if ("is".equals(localName)) {
+				inInlineString = true;
+				hasValue = true;
+			} else if ("rPh".equals(localName)) {
+				inPhonetic = true;
+			} else if ("t".equals(localName) && inInlineString && !inPhonetic) {
+				inValue = true;
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			if ("row".equals(localName)) {
+				if (measure) {
+					converter.measureSheetRow(row);
+				} else {
+					converter.processSheetRow(row);
+				}
+				inRow = false;
+			} else if (inRow && "c".equals(localName)) {
+				readCell(row.addCell(colIx));
+			} else if ("v".equals(localName) || "t".equals(localName)) {
+				inValue = false;
+			} else if ("is".equals(localName)) {
+				inInlineString = false;
+			} else if ("rPh".equals(localName)) {
+				inPhonetic = false;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (inValue) {
+				value.append(ch, start, length);
+			}
+		}
+
+		/**
+		 * Fills the cell the same way XSSFCell would interpret it
+		 */
+		private void readCell(SheetCell cell) {
+			cell.setStyleIndex(styleIndex);
+			CellType baseType;
+			if ("s".equals(cellType)) {
+				baseType = CellType.STRING;
+				if (hasValue) {
+					cell.setStringValue(sharedStrings.getEntryAt(Integer.parseInt(value.toString().trim())));
+				}
+			} else if ("inlineStr".equals(cellType) || "str".equals(cellType) || "d".equals(cellType)) {
+				baseType = CellType.STRING;
+				cell.setStringValue(value.toString());
+			} else if ("b".equals(cellType)) {
+				baseType = CellType.BOOLEAN;
+				cell.setBooleanValue("1".equals(value.toString()));
+			} else if ("e".equals(cellType)) {
+				baseType = CellType.ERROR;
+				cell.setStringValue(value.toString());
+			} else if (hasValue || formula) {
+				baseType = CellType.NUMERIC;
+				if (value.length() > 0) {
+					cell.setNumericValue(Double.parseDouble(value.toString()));
+				}
+			} else {
+				baseType = CellType.BLANK;
+			}
+
+			if (formula) {
+				cell.setCellType(CellType.FORMULA);
+				cell.setCachedFormulaResultType(baseType);
+			} else {
+				cell.setCellType(baseType);
+			}
+		}
+	}
+}
@@ -1,23 +1,26 @@
 
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.LinkedHashMap;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
 
-import org.apache.poi.hssf.converter.ExcelToHtmlUtils;
 import org.apache.poi.hssf.usermodel.HSSFDataFormatter;
 import org.apache.poi.hwpf.converter.HtmlDocumentFacade;
 import org.apache.poi.hwpf.converter.NumberFormatter;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.ss.formula.eval.ErrorEval;
 import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.HorizontalAlignment;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.util.Beta;
 import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.model.StylesTable;
 import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFFont;
@@ -26,8 +29,7 @@ import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Text;
+import org.xml.sax.SAXException;
 
 /*
  * MIT License
@@ -81,6 +83,8 @@ limitations under the License.
  * 
  * Wrapping content into two additional DIVs not included
  * 
+ * Output goes to an {@link HtmlSink}, either a DOM or a stream
+ * 
  * Logger not included
  * 
  * Converter is used here: https://github.com/ysf199711/DocsToPdfConverter
@@ -93,7 +97,9 @@ limitations under the License.
 @Beta
 public class XLSXToHTMLConverter {
 
-	private final HtmlDocumentFacade htmlDocFacade;
+	private static final String TABLE_STYLE = "border-collapse:collapse;border-spacing:0;";
+
+	private final HtmlSink sink;
 
 	private String cssClassPrefixCell = "c";
 	private String cssClassPrefixRow = "r";
@@ -104,8 +110,11 @@ public class XLSXToHTMLConverter {
 	private boolean outputHiddenRows = false;
 	private boolean outputLeadingSpacesAsNonBreaking = true;
 	private boolean outputRowNumbers = true;
+	private int maxEmptyRowRun = -1;
+	private int maxEmptyColumnRun = -1;
 
-	private Map<Short, String> excelStyleToClass = new LinkedHashMap<Short, String>();
+	//CSS class of each cell style index of the workbook being converted
+	private String[] styleClasses = new String[0];
 
 	private static final short EXCEL_COLUMN_WIDTH_FACTOR = 256;
 	private static final int UNIT_OFFSET_LENGTH = 7;
@@ -113,12 +122,39 @@ public class XLSXToHTMLConverter {
 	//No XSSFDataFormatter found, use HSSFDataFormatter
 	protected final HSSFDataFormatter hssfDataFormatter = new HSSFDataFormatter();
 
+	private StylesTable stylesSource;
+	private boolean date1904;
+	private NumberFormatCache numberFormats;
+	//Data format index and string of each cell style index
+	private short[] styleFormatIndexes = new short[0];
+	private String[] styleFormatStrings = new String[0];
+
+	//State of the sheet being converted
+	private boolean sheetStarted;
+	//Rows and cells read, reported to the conversion at the end of the sheet
+	private long sheetRows;
+	private long sheetCells;
+	//Deadline and limits of the conversion, checked once per row
+	private ConversionHandle handle;
+	private boolean columnsWritten;
+	private ColumnTable columnTable;
+	private MergedRegionIndex mergedRegionIndex;
+	private List<Float> emptyRowHeights;
+	private int maxSheetColumns;
+	private final BitSet usedColumns = new BitSet();
+	private final HtmlRow rowBuffer = new HtmlRow();
+	private final HtmlRow emptyRow = new HtmlRow();
+
 	public XLSXToHTMLConverter(Document doc) {
-		htmlDocFacade = new HtmlDocumentFacade(doc);
+		this(new DomHtmlSink(doc));
 	}
 
 	public XLSXToHTMLConverter(HtmlDocumentFacade htmlDocFacade) {
-		this.htmlDocFacade = htmlDocFacade;
+		this(new DomHtmlSink(htmlDocFacade));
+	}
+
+	public XLSXToHTMLConverter(HtmlSink sink) {
+		this.sink = sink;
 	}
 
 	public boolean isOutputColumnHeaders() {
@@ -161,22 +197,51 @@ public class XLSXToHTMLConverter {
 		this.outputRowNumbers = outputRowNumbers;
 	}
 
-	public Document getDocument() {
-		return htmlDocFacade.getDocument();
+	public int getMaxEmptyRowRun() {
+		return maxEmptyRowRun;
 	}
 
-	protected String getStyleClassName(XSSFWorkbook workbook, XSSFCellStyle cellStyle) {
-		final Short cellStyleKey = Short.valueOf(cellStyle.getIndex());
-		String knownClass = excelStyleToClass.get(cellStyleKey);
+	/**
+	 * @param maxEmptyRowRun
+	 *            Number of empty rows kept of a run of empty rows between
+	 *            rows with content, the rest of the run is left out. -1
+	 *            keeps all rows
+	 */
+	public void setMaxEmptyRowRun(int maxEmptyRowRun) {
+		this.maxEmptyRowRun = maxEmptyRowRun;
+	}
+
+	public int getMaxEmptyColumnRun() {
+		return maxEmptyColumnRun;
+	}
+
+	/**
+	 * @param maxEmptyColumnRun
+	 *            Number of columns kept of a run of columns without content
+	 *            in any row, the rest of the run is left out. Cells with
+	 *            content or a non-default style count as content. Needs an
+	 *            extra pass over the rows of each sheet. -1 keeps all columns
+	 */
+	public void setMaxEmptyColumnRun(int maxEmptyColumnRun) {
+		this.maxEmptyColumnRun = maxEmptyColumnRun;
+	}
 
-		if (knownClass != null) {
-			return knownClass;
+	/**
+	 * @return the result HTML, null if the converter does not write to a DOM
+	 */
+	public Document getDocument() {
+		if (sink instanceof DomHtmlSink) {
+			return ((DomHtmlSink) sink).getDocument();
 		}
-		String cssStyle = buildStyle(workbook, cellStyle);
-		String cssClass = htmlDocFacade.getOrCreateCssClass(cssClassPrefixCell, cssStyle);
-		excelStyleToClass.put(cellStyleKey, cssClass);
+		return null;
+	}
 
-		return cssClass;
+	protected String getStyleClassName(XSSFCellStyle cellStyle) {
+		final int styleIndex = cellStyle.getIndex();
+		if (styleIndex < styleClasses.length && styleClasses[styleIndex] != null) {
+			return styleClasses[styleIndex];
+		}
+		return sink.getOrCreateCssClass(cssClassPrefixCell, buildStyle(cellStyle));
 	}
 
 	public static String getAlign(HorizontalAlignment alignment) {
@@ -261,24 +326,33 @@ public class XLSXToHTMLConverter {
 		return pixels;
 	}
 
-	protected String buildStyle(XSSFWorkbook workbook, XSSFCellStyle cellStyle) {
+	protected String buildStyle(XSSFCellStyle cellStyle) {
+		XSSFFont font = cellStyle.getFont();
+		return buildStyle(cellStyle.getAlignmentEnum().getCode(), cellStyle.getBorderTopEnum(),
+				cellStyle.getBorderRightEnum(), cellStyle.getBorderBottomEnum(), cellStyle.getBorderLeftEnum(),
+				font.getBold(), font.getFontHeightInPoints(), font.getItalic());
+	}
+
+	/**
+	 * Builds the CSS of a cell style from its properties, so cell styles of
+	 * both file formats are turned into the same CSS
+	 */
+	static String buildStyle(short alignment, BorderStyle borderTop, BorderStyle borderRight,
+			BorderStyle borderBottom, BorderStyle borderLeft, boolean bold, short fontHeightInPoints, boolean italic) {
 		StringBuilder style = new StringBuilder();
 
 		style.append("white-space:pre-wrap;");
-		appendAlign(style, cellStyle.getAlignmentEnum().getCode());
-		buildStyle_border(workbook, style, "top", cellStyle.getBorderTopEnum(), cellStyle.getTopBorderColor());
-		buildStyle_border(workbook, style, "right", cellStyle.getBorderRightEnum(), cellStyle.getRightBorderColor());
-		buildStyle_border(workbook, style, "bottom", cellStyle.getBorderBottomEnum(), cellStyle.getBottomBorderColor());
-		buildStyle_border(workbook, style, "left", cellStyle.getBorderLeftEnum(), cellStyle.getLeftBorderColor());
-
-		XSSFFont font = cellStyle.getFont();
-		buildStyle_font(workbook, style, font);
+		appendAlign(style, alignment);
+		buildStyle_border(style, "top", borderTop);
+		buildStyle_border(style, "right", borderRight);
+		buildStyle_border(style, "bottom", borderBottom);
+		buildStyle_border(style, "left", borderLeft);
+		buildStyle_font(style, bold, fontHeightInPoints, italic);
 
 		return style.toString();
 	}
 
-	private void buildStyle_border(XSSFWorkbook workbook, StringBuilder style, String type, BorderStyle xlsBorder,
-			short borderColor) {
+	private static void buildStyle_border(StringBuilder style, String type, BorderStyle xlsBorder) {
 		if (xlsBorder == BorderStyle.NONE) {
 			return;
 		}
@@ -291,14 +365,14 @@ public class XLSXToHTMLConverter {
 		style.append("border-" + type + ":" + borderStyle + ";");
 	}
 
-	private void buildStyle_font(XSSFWorkbook workbook, StringBuilder style, XSSFFont font) {
-		if (font.getBold()) {
+	private static void buildStyle_font(StringBuilder style, boolean bold, short fontHeightInPoints, boolean italic) {
+		if (bold) {
 			style.append("font-weight:bold;");
 		}
-		if (font.getFontHeightInPoints() != 0) {
-			style.append("font-size:" + font.getFontHeightInPoints() + "pt;");
+		if (fontHeightInPoints != 0) {
+			style.append("font-size:" + fontHeightInPoints + "pt;");
 		}
-		if (font.getItalic()) {
+		if (italic) {
 			style.append("font-style:italic;");
 		}
 	}
@@ -334,168 +408,572 @@ public class XLSXToHTMLConverter {
 		return doc;
 	}
 
+	/**
+	 * Converts Excel file (2007) into HTML file without loading the workbook
+	 * into memory. Sheets are read row by row with the XSSF event API, see
+	 * {@link XLSXStreamingReader}
+	 * 
+	 * @param pkg
+	 *            package of the workbook to process
+	 * @param keepColumnHeaders If user wish to keep column headers on output
+	 * @param keepRowNumbers If user wish to keep row numbers on output
+	 * @return DOM representation of result HTML
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 * @throws OpenXML4JException
+	 */
+	public static Document convertStreaming(OPCPackage pkg, boolean keepColumnHeaders, boolean keepRowNumbers)
+			throws IOException, ParserConfigurationException, SAXException, OpenXML4JException {
+		XLSXToHTMLConverter xlsxToHTMLConverter = new XLSXToHTMLConverter(
+				XMLHelper.getDocumentBuilderFactory().newDocumentBuilder().newDocument());
+		xlsxToHTMLConverter.setOutputColumnHeaders(keepColumnHeaders);
+		xlsxToHTMLConverter.setOutputRowNumbers(keepRowNumbers);
+		new XLSXStreamingReader(pkg).read(xlsxToHTMLConverter);
+		Document doc = xlsxToHTMLConverter.getDocument();
+		return doc;
+	}
+
+	/**
+	 * Converts Excel file (2007) into an XHTML stream. Memory used for the
+	 * output does not grow with the number of cells
+	 * 
+	 * @param workbook
+	 *            workbook instance to process
+	 * @param keepColumnHeaders If user wish to keep column headers on output
+	 * @param keepRowNumbers If user wish to keep row numbers on output
+	 * @param out
+	 *            Stream to write UTF-8 encoded XHTML to. Not closed
+	 */
+	public static void convert(XSSFWorkbook workbook, boolean keepColumnHeaders, boolean keepRowNumbers,
+			OutputStream out) {
+		XLSXToHTMLConverter xlsxToHTMLConverter = new XLSXToHTMLConverter(new XhtmlStreamSink(out));
+		xlsxToHTMLConverter.setOutputColumnHeaders(keepColumnHeaders);
+		xlsxToHTMLConverter.setOutputRowNumbers(keepRowNumbers);
+		xlsxToHTMLConverter.processWorkbook(workbook);
+	}
+
+	/**
+	 * Converts Excel file (2007) into an XHTML stream, reading the workbook row
+	 * by row. Neither input nor output is kept in memory
+	 * 
+	 * @param pkg
+	 *            package of the workbook to process
+	 * @param keepColumnHeaders If user wish to keep column headers on output
+	 * @param keepRowNumbers If user wish to keep row numbers on output
+	 * @param out
+	 *            Stream to write UTF-8 encoded XHTML to. Not closed
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 * @throws OpenXML4JException
+	 */
+	public static void convertStreaming(OPCPackage pkg, boolean keepColumnHeaders, boolean keepRowNumbers,
+			OutputStream out) throws IOException, ParserConfigurationException, SAXException, OpenXML4JException {
+		XLSXToHTMLConverter xlsxToHTMLConverter = new XLSXToHTMLConverter(new XhtmlStreamSink(out));
+		xlsxToHTMLConverter.setOutputColumnHeaders(keepColumnHeaders);
+		xlsxToHTMLConverter.setOutputRowNumbers(keepRowNumbers);
+		new XLSXStreamingReader(pkg).read(xlsxToHTMLConverter);
+	}
+
+	/**
+	 * Converts Excel file (97-2007) into HTML, reading the workbook record by
+	 * record with the HSSF event API, see {@link HSSFStreamingReader}
+	 * 
+	 * @param xls
+	 *            The xls file to process
+	 * @param keepColumnHeaders If user wish to keep column headers on output
+	 * @param keepRowNumbers If user wish to keep row numbers on output
+	 * @return DOM representation of result HTML
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 */
+	public static Document convertXlsStreaming(File xls, boolean keepColumnHeaders, boolean keepRowNumbers)
+			throws IOException, ParserConfigurationException {
+		XLSXToHTMLConverter xlsxToHTMLConverter = new XLSXToHTMLConverter(
+				XMLHelper.getDocumentBuilderFactory().newDocumentBuilder().newDocument());
+		xlsxToHTMLConverter.setOutputColumnHeaders(keepColumnHeaders);
+		xlsxToHTMLConverter.setOutputRowNumbers(keepRowNumbers);
+		HSSFStreamingReader reader = HSSFStreamingReader.open(xls);
+		try {
+			reader.read(xlsxToHTMLConverter);
+		} finally {
+			reader.getFileSystem().close();
+		}
+		return xlsxToHTMLConverter.getDocument();
+	}
+
+	/**
+	 * Converts Excel file (97-2007) into an XHTML stream, reading the workbook
+	 * record by record. Neither input nor output is kept in memory
+	 * 
+	 * @param xls
+	 *            The xls file to process
+	 * @param keepColumnHeaders If user wish to keep column headers on output
+	 * @param keepRowNumbers If user wish to keep row numbers on output
+	 * @param out
+	 *            Stream to write UTF-8 encoded XHTML to. Not closed
+	 * @throws IOException
+	 */
+	public static void convertXlsStreaming(File xls, boolean keepColumnHeaders, boolean keepRowNumbers,
+			OutputStream out) throws IOException {
+		XLSXToHTMLConverter xlsxToHTMLConverter = new XLSXToHTMLConverter(new XhtmlStreamSink(out));
+		xlsxToHTMLConverter.setOutputColumnHeaders(keepColumnHeaders);
+		xlsxToHTMLConverter.setOutputRowNumbers(keepRowNumbers);
+		HSSFStreamingReader reader = HSSFStreamingReader.open(xls);
+		try {
+			reader.read(xlsxToHTMLConverter);
+		} finally {
+			reader.getFileSystem().close();
+		}
+	}
+
+	/**
+	 * Converts Excel file (2007) into a series of small HTML documents, each
+	 * with at most rowsPerChunk table rows. Each document is handed to the
+	 * listener before the next one is built, see {@link ChunkedHtmlSink}
+	 * 
+	 * @param pkg
+	 *            package of the workbook to process
+	 * @param streaming
+	 *            Read the workbook row by row, see {@link XLSXStreamingReader}
+	 * @param keepColumnHeaders If user wish to keep column headers on output
+	 * @param keepRowNumbers If user wish to keep row numbers on output
+	 * @param rowsPerChunk
+	 *            Maximum number of table rows per document
+	 * @param listener
+	 *            Receives the documents
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 * @throws OpenXML4JException
+	 * @throws ChunkListenerException
+	 *             If the listener failed
+	 */
+	public static void convertChunked(OPCPackage pkg, boolean streaming, boolean keepColumnHeaders,
+			boolean keepRowNumbers, int rowsPerChunk, ChunkedHtmlSink.ChunkListener listener)
+			throws IOException, ParserConfigurationException, SAXException, OpenXML4JException,
+			ChunkListenerException {
+		ChunkedHtmlSink sink = new ChunkedHtmlSink(rowsPerChunk, listener);
+		XLSXToHTMLConverter xlsxToHTMLConverter = new XLSXToHTMLConverter(sink);
+		xlsxToHTMLConverter.setOutputColumnHeaders(keepColumnHeaders);
+		xlsxToHTMLConverter.setOutputRowNumbers(keepRowNumbers);
+		if (streaming) {
+			new XLSXStreamingReader(pkg).read(xlsxToHTMLConverter);
+		} else {
+			xlsxToHTMLConverter.processWorkbook(new XSSFWorkbook(pkg));
+		}
+		sink.checkFailure();
+	}
+
 	protected void processWorkbook(XSSFWorkbook workbook) {
+		beginWorkbook(workbook.getStylesSource(), workbook.isDate1904());
 		for (int s = 0; s < workbook.getNumberOfSheets(); s++) {
 			XSSFSheet sheet = workbook.getSheetAt(s);
 			processSheet(sheet);
 		}
-		htmlDocFacade.updateStylesheet();
+		endWorkbook();
+	}
+
+	/**
+	 * Starts a workbook
+	 * 
+	 * @param stylesSource
+	 *            Styles table cell style indexes refer to
+	 * @param date1904
+	 *            If the workbook uses the 1904 date system
+	 */
+	protected void beginWorkbook(StylesTable stylesSource, boolean date1904) {
+		this.stylesSource = stylesSource;
+		short[] formatIndexes = new short[stylesSource.getNumCellStyles()];
+		String[] formatStrings = new String[formatIndexes.length];
+		for (int i = 0; i < formatIndexes.length; i++) {
+			XSSFCellStyle cellStyle = stylesSource.getStyleAt(i);
+			if (cellStyle != null) {
+				formatIndexes[i] = cellStyle.getDataFormat();
+				formatStrings[i] = cellStyle.getDataFormatString();
+			}
+		}
+		beginWorkbook(CellStyleTable.of(stylesSource, this), formatIndexes, formatStrings, date1904);
+	}
+
+	/**
+	 * Starts a workbook whose cell styles are already resolved, as done by
+	 * {@link HSSFStreamingReader}
+	 * 
+	 * @param styleTable
+	 *            CSS of each cell style index
+	 * @param formatIndexes
+	 *            Data format index of each cell style index
+	 * @param formatStrings
+	 *            Data format string of each cell style index
+	 * @param date1904
+	 *            If the workbook uses the 1904 date system
+	 */
+	protected void beginWorkbook(CellStyleTable styleTable, short[] formatIndexes, String[] formatStrings,
+			boolean date1904) {
+		this.date1904 = date1904;
+		numberFormats = new NumberFormatCache(hssfDataFormatter, date1904);
+		styleFormatIndexes = formatIndexes;
+		styleFormatStrings = formatStrings;
+
+		// Register the cell style classes once, rows only look up their index
+		sink.getOrCreateCssClass(cssClassPrefixTable, TABLE_STYLE);
+		styleClasses = new String[styleTable.size()];
+		for (int i = 1; i < styleClasses.length; i++) {
+			String css = styleTable.getCss(i);
+			if (css != null) {
+				styleClasses[i] = sink.getOrCreateCssClass(cssClassPrefixCell, css);
+			}
+		}
+		sink.startDocument();
+	}
+
+	protected void endWorkbook() {
+		sink.endDocument();
 	}
 
 	protected void processSheet(XSSFSheet sheet) {
-		processSheetHeader(htmlDocFacade.getBody(), sheet);
-		final int physicalNumOfRows = sheet.getPhysicalNumberOfRows();
+		beginSheet(sheet.getSheetName(), sheet.getPhysicalNumberOfRows(), sheet.getMergedRegions(),
+				new XSSFSheetColumns(sheet));
+		if (sheetStarted) {
+			final SheetRow rowWindow = new SheetRow();
+			if (isMeasurePassRequired()) {
+				for (int r = sheet.getFirstRowNum(); r <= sheet.getLastRowNum(); r++) {
+					XSSFRow row = sheet.getRow(r);
+					if (row == null) {
+						continue;
+					}
+					readRow(row, rowWindow);
+					measureSheetRow(rowWindow);
+				}
+			}
+			startSheetRows();
+			for (int r = sheet.getFirstRowNum(); r <= sheet.getLastRowNum(); r++) {
+				XSSFRow row = sheet.getRow(r);
+				if (row == null) {
+					continue;
+				}
+				readRow(row, rowWindow);
+				processSheetRow(rowWindow);
+			}
+		}
+		endSheet();
+	}
+
+	/**
+	 * Starts a sheet. If {@link #isMeasurePassRequired()}, all rows have to be
+	 * passed to {@link #measureSheetRow(SheetRow)} first. Then
+	 * {@link #startSheetRows()} is called, rows are passed one by one to
+	 * {@link #processSheetRow(SheetRow)} and the sheet is completed by
+	 * {@link #endSheet()}
+	 * 
+	 * @param sheetName
+	 *            Name of the sheet
+	 * @param physicalNumOfRows
+	 *            Number of rows defined in the sheet
+	 * @param mergedRegions
+	 *            Merged regions of the sheet
+	 * @param columns
+	 *            Column properties of the sheet
+	 */
+	protected void beginSheet(String sheetName, int physicalNumOfRows, List<CellRangeAddress> mergedRegions,
+			SheetColumns columns) {
+		ConversionMetrics metrics = ConversionMetrics.current();
+		if (metrics != null) {
+			metrics.addSheets(1);
+		}
+		handle = ConversionHandle.current();
+		if (handle != null) {
+			handle.check();
+		}
+		processSheetHeader(sheetName);
 		if (physicalNumOfRows <= 0) {
 			return;
 		}
-		Element table = htmlDocFacade.createTable();
-		htmlDocFacade.addStyleClass(table, cssClassPrefixTable, "border-collapse:collapse;border-spacing:0;");
-		Element tableBody = htmlDocFacade.createTableBody();
-		final CellRangeAddress[][] mergedRanges = buildMergedRangesMap(sheet);
-		final List<Element> emptyRowElements = new ArrayList<Element>(physicalNumOfRows);
+		sheetStarted = true;
+		columnsWritten = false;
+		columnTable = new ColumnTable(columns, 0);
+		mergedRegionIndex = new MergedRegionIndex(mergedRegions);
+		emptyRowHeights = new ArrayList<Float>();
+		maxSheetColumns = 1;
+		usedColumns.clear();
+	}
 
-		int maxSheetColumns = 1;
-		for (int r = sheet.getFirstRowNum(); r <= sheet.getLastRowNum(); r++) {
-			XSSFRow row = sheet.getRow(r);
-			if (row == null) {
-				continue;
-			}
-			if (!isOutputHiddenRows() && row.getZeroHeight()) {
-				continue;
-			}
+	/**
+	 * @return true if the sink needs the number of columns before the first
+	 *         row, so rows have to be read twice
+	 */
+	protected boolean isMeasurePassRequired() {
+		return sink.requiresColumnsFirst() || maxEmptyColumnRun >= 0;
+	}
 
-			Element tableRowElement = htmlDocFacade.createTableRow();
-			htmlDocFacade.addStyleClass(tableRowElement, cssClassPrefixRow,
-					"height:" + (row.getHeight() / 20f) + "pt;");
+	/**
+	 * Measures one row of the current sheet without writing it
+	 */
+	protected void measureSheetRow(SheetRow row) {
+		if (handle != null) {
+			handle.addCells(row.getCellCount());
+		}
+		if (!isOutputHiddenRows() && row.getZeroHeight()) {
+			return;
+		}
+		maxSheetColumns = Math.max(maxSheetColumns, processRow(mergedRegionIndex, row, rowBuffer));
+	}
 
-			int maxRowColumnNumber = processRow(mergedRanges, row, tableRowElement);
+	/**
+	 * Starts the table of the current sheet
+	 */
+	protected void startSheetRows() {
+		sink.startTable(sink.getOrCreateCssClass(cssClassPrefixTable, TABLE_STYLE));
+		if (maxEmptyColumnRun >= 0) {
+			collapseEmptyColumns();
+		}
+		if (isMeasurePassRequired()) {
+			writeColumns();
+		}
+		sink.startTableBody();
+	}
 
-			if (maxRowColumnNumber == 0) {
-				emptyRowElements.add(tableRowElement);
+	/**
+	 * Converts one row of the current sheet. Rows must be passed in ascending
+	 * order
+	 */
+	protected void processSheetRow(SheetRow row) {
+		sheetRows++;
+		sheetCells += row.getCellCount();
+		if (handle != null) {
+			// Cells were counted by the measure pass already
+			if (isMeasurePassRequired()) {
+				handle.check();
 			} else {
-				if (!emptyRowElements.isEmpty()) {
-					for (Element emptyRowElement : emptyRowElements) {
-						tableBody.appendChild(emptyRowElement);
-					}
-					emptyRowElements.clear();
+				handle.addCells(row.getCellCount());
+			}
+		}
+		if (!isOutputHiddenRows() && row.getZeroHeight()) {
+			return;
+		}
+
+		float heightPt = row.getHeight() / 20f;
+		int maxRowColumnNumber = processRow(mergedRegionIndex, row, rowBuffer);
+
+		if (maxRowColumnNumber == 0) {
+			if (maxEmptyRowRun < 0 || emptyRowHeights.size() < maxEmptyRowRun) {
+				emptyRowHeights.add(heightPt);
+			}
+		} else {
+			if (!emptyRowHeights.isEmpty()) {
+				for (Float emptyRowHeight : emptyRowHeights) {
+					sink.writeRow(cssClassPrefixRow, getRowStyle(emptyRowHeight), emptyRow);
 				}
-				tableBody.appendChild(tableRowElement);
+				emptyRowHeights.clear();
+			}
+			sink.writeRow(cssClassPrefixRow, getRowStyle(heightPt), rowBuffer);
+		}
+		maxSheetColumns = Math.max(maxSheetColumns, maxRowColumnNumber);
+	}
+
+	protected void endSheet() {
+		if (!sheetStarted) {
+			return;
+		}
+		if (!columnsWritten) {
+			writeColumns();
+		}
+		sink.endTable();
+
+		ConversionMetrics metrics = ConversionMetrics.current();
+		if (metrics != null) {
+			metrics.addRows(sheetRows);
+			metrics.addCells(sheetCells);
+		}
+
+		sheetStarted = false;
+		sheetRows = 0;
+		sheetCells = 0;
+		columnTable = null;
+		mergedRegionIndex = null;
+		emptyRowHeights = null;
+	}
+
+	/**
+	 * Leaves out the columns of long runs of columns the measure pass found
+	 * no content in
+	 */
+	private void collapseEmptyColumns() {
+		int c = usedColumns.nextClearBit(0);
+		while (c < maxSheetColumns) {
+			int end = usedColumns.nextSetBit(c);
+			if (end < 0 || end > maxSheetColumns) {
+				end = maxSheetColumns;
 			}
-			maxSheetColumns = Math.max(maxSheetColumns, maxRowColumnNumber);
+			if (end - c > maxEmptyColumnRun) {
+				columnTable.collapse(c + maxEmptyColumnRun, end);
+			}
+			c = usedColumns.nextClearBit(end);
 		}
+	}
 
-		processColumnWidths(sheet, maxSheetColumns, table);
+	private void writeColumns() {
+		columnTable.ensureColumns(maxSheetColumns);
+		processColumnWidths(columnTable, maxSheetColumns);
 		if (isOutputColumnHeaders()) {
-			processColumnHeaders(sheet, maxSheetColumns, table);
+			processColumnHeaders(columnTable, maxSheetColumns);
 		}
+		columnsWritten = true;
+	}
 
-		table.appendChild(tableBody);
+	private static String getRowStyle(float heightPt) {
+		return "height:" + heightPt + "pt;";
+	}
 
-		htmlDocFacade.getBody().appendChild(table);
+	/**
+	 * Copies the cells of an XSSFRow into the row window
+	 */
+	protected void readRow(XSSFRow row, SheetRow rowWindow) {
+		rowWindow.reset(row.getRowNum(), row.getHeight(), row.getZeroHeight());
+		for (Cell c : row) {
+			XSSFCell cell = (XSSFCell) c;
+			SheetCell sheetCell = rowWindow.addCell(cell.getColumnIndex());
+			XSSFCellStyle cellStyle = cell.getCellStyle();
+			if (cellStyle != null) {
+				sheetCell.setStyleIndex(cellStyle.getIndex());
+			}
+			sheetCell.setCellType(cell.getCellTypeEnum());
+			switch (cell.getCellTypeEnum()) {
+				case STRING:
+					sheetCell.setStringValue(cell.getRichStringCellValue().getString());
+					break;
+				case FORMULA:
+					sheetCell.setCachedFormulaResultType(cell.getCachedFormulaResultTypeEnum());
+					switch (cell.getCachedFormulaResultTypeEnum()) {
+						case STRING:
+							XSSFRichTextString str = cell.getRichStringCellValue();
+							if (str != null && str.length() > 0) {
+								sheetCell.setStringValue(str.toString());
+							}
+							break;
+						case NUMERIC:
+							sheetCell.setNumericValue(cell.getNumericCellValue());
+							break;
+						case BOOLEAN:
+							sheetCell.setBooleanValue(cell.getBooleanCellValue());
+							break;
+						case ERROR:
+							sheetCell.setStringValue(ErrorEval.getText(cell.getErrorCellValue()));
+							break;
+						default:
+							break;
+					}
+					break;
+				case NUMERIC:
+					sheetCell.setNumericValue(cell.getNumericCellValue());
+					break;
+				case BOOLEAN:
+					sheetCell.setBooleanValue(cell.getBooleanCellValue());
+					break;
+				case ERROR:
+					sheetCell.setStringValue(ErrorEval.getText(cell.getErrorCellValue()));
+					break;
+				default:
+					break;
+			}
+		}
 	}
 
 	/**
-	 * @return maximum 1-base index of column that were rendered, zero if none
+	 * Fills the row buffer with the cells to render. Empty cells after the
+	 * last non-empty one are dropped
+	 * 
+	 * @return maximum 1-base index of column that were rendered, zero if the
+	 *         row has no cells. A row whose cells have no text and the default
+	 *         style counts as empty only when empty rows are collapsed
 	 */
-	protected int processRow(CellRangeAddress[][] mergedRanges, XSSFRow row, Element tableRowElement) {
-		final XSSFSheet sheet = row.getSheet();
-		final short maxColIx = row.getLastCellNum();
+	protected int processRow(MergedRegionIndex mergedRanges, SheetRow row, HtmlRow tableRow) {
+		tableRow.clear();
+		final int maxColIx = row.getLastCellNum();
 		if (maxColIx <= 0) {
 			return 0;
 		}
 
-		final List<Element> emptyCells = new ArrayList<Element>(maxColIx);
-
 		if (isOutputRowNumbers()) {
-			Element tableRowNumberCellElement = htmlDocFacade.createTableHeaderCell();
-			processRowNumber(row, tableRowNumberCellElement);
-			emptyCells.add(tableRowNumberCellElement);
+			HtmlRow.Cell tableRowNumberCell = tableRow.addHeaderCell();
+			processRowNumber(row, tableRowNumberCell);
 		}
 
-		int maxRenderedColumn = 0;
+		final ColumnTable columns = columnTable;
+		columns.ensureColumns(maxColIx);
+		final boolean outputHidden = isOutputHiddenColumns();
+		final float heightPt = row.getHeight() / 20f;
+		int maxRenderedColumn = -1;
 		for (int colIx = 0; colIx < maxColIx; colIx++) {
-			if (!isOutputHiddenColumns() && sheet.isColumnHidden(colIx)) {
+			if (columns.isSkipped(colIx, outputHidden)) {
 				continue;
 			}
-			CellRangeAddress range = ExcelToHtmlUtils.getMergedRange(mergedRanges, row.getRowNum(), colIx);
+			CellRangeAddress range = mergedRanges.getMergedRange(row.getRowNum(), colIx);
 
 			if (range != null && (range.getFirstColumn() != colIx || range.getFirstRow() != row.getRowNum())) {
 				continue;
 			}
 
-			XSSFCell cell = row.getCell(colIx);
+			SheetCell cell = row.getCell(colIx);
 
-			Element tableCellElement = htmlDocFacade.createTableCell();
+			HtmlRow.Cell tableCell = tableRow.addCell();
 
 			if (range != null) {
-				if (range.getFirstColumn() != range.getLastColumn()) {
-					tableCellElement.setAttribute("colspan",
-							String.valueOf(range.getLastColumn() - range.getFirstColumn() + 1));
-				}
-				if (range.getFirstRow() != range.getLastRow()) {
-					tableCellElement.setAttribute("rowspan",
-							String.valueOf(range.getLastRow() - range.getFirstRow() + 1));
-				}
+				tableCell.setColSpan(range.getLastColumn() - range.getFirstColumn() + 1);
+				tableCell.setRowSpan(range.getLastRow() - range.getFirstRow() + 1);
 			}
 
 			boolean emptyCell;
 			if (cell != null) {
-				emptyCell = processCell(cell, tableCellElement, getColumnWidth(sheet, colIx), 0, row.getHeight() / 20f);
+				emptyCell = processCell(cell, tableCell, columns.getWidthPx(colIx), 0, heightPt);
 			} else {
 				emptyCell = true;
 			}
 
-			if (emptyCell) {
-				emptyCells.add(tableCellElement);
-			} else {
-				for (Element emptyCellElement : emptyCells) {
-					tableRowElement.appendChild(emptyCellElement);
-				}
-				emptyCells.clear();
-
-				tableRowElement.appendChild(tableCellElement);
+			if (!emptyCell) {
+				tableRow.commit();
 				maxRenderedColumn = colIx;
+				usedColumns.set(colIx, range != null ? range.getLastColumn() + 1 : colIx + 1);
 			}
 		}
+		tableRow.dropUncommitted();
 
+		if (maxRenderedColumn < 0 && maxEmptyRowRun < 0) {
+			// Written like a row with content, as without collapsing
+			return 1;
+		}
 		return maxRenderedColumn + 1;
 	}
 
-	protected boolean processCell(XSSFCell cell, Element tableCellElement, int normalWidthPx, int maxSpannedWidthPx,
+	protected boolean processCell(SheetCell cell, HtmlRow.Cell tableCell, int normalWidthPx, int maxSpannedWidthPx,
 			float normalHeightPt) {
-		final XSSFCellStyle cellStyle = cell.getCellStyle();
+		final int styleIndex = cell.getStyleIndex();
 		String value;
 
-		switch (cell.getCellTypeEnum()) {
+		switch (cell.getCellType()) {
 			case STRING:
 				// XXX: enrich
-				value = cell.getRichStringCellValue().getString();
+				value = cell.getStringValue();
 				break;
 			case FORMULA:
-				switch (cell.getCachedFormulaResultTypeEnum()) {
+				switch (cell.getCachedFormulaResultType()) {
 					case STRING:
-						XSSFRichTextString str = cell.getRichStringCellValue();
-						if (str != null && str.length() > 0) {
-							value = (str.toString());
-						} else {
-							value = "";
-						}
+						value = cell.getStringValue();
 						break;
 					case NUMERIC:
-						double nValue = cell.getNumericCellValue();
-						short df = cellStyle.getDataFormat();
-						String dfs = cellStyle.getDataFormatString();
-						value = hssfDataFormatter.formatRawCellContents(nValue, df, dfs);
+						value = formatNumericValue(cell.getNumericValue(), styleIndex);
 						break;
 					case BOOLEAN:
-						value = String.valueOf(cell.getBooleanCellValue());
+						value = String.valueOf(cell.getBooleanValue());
 						break;
 					case ERROR:
-						value = ErrorEval.getText(cell.getErrorCellValue());
+						value = cell.getStringValue();
 						break;
 					default:
 						System.out.println(
-								"Unexpected cell cachedFormulaResultType (" + cell.getCachedFormulaResultTypeEnum() + ")");
+								"Unexpected cell cachedFormulaResultType (" + cell.getCachedFormulaResultType() + ")");
 						value = "";
 						break;
 				}
@@ -504,25 +982,24 @@ public class XLSXToHTMLConverter {
 				value = "";
 				break;
 			case NUMERIC:
-				value = hssfDataFormatter.formatCellValue(cell);
+				value = formatNumericValue(cell.getNumericValue(), styleIndex);
 				break;
 			case BOOLEAN:
-				value = String.valueOf(cell.getBooleanCellValue());
+				value = String.valueOf(cell.getBooleanValue());
 				break;
 			case ERROR:
-				value = ErrorEval.getText(cell.getErrorCellValue());
+				value = cell.getStringValue();
 				break;
 			default:
-				System.out.println("Unexpected cell type (" + cell.getCellTypeEnum() + ")");
+				System.out.println("Unexpected cell type (" + cell.getCellType() + ")");
 				return true;
 		}
 
 		final boolean noText = isEmpty(value);
 
-		if (cellStyle.getIndex() != 0) {
-			XSSFWorkbook workbook = cell.getRow().getSheet().getWorkbook();
-			String mainCssClass = getStyleClassName(workbook, cellStyle);
-			tableCellElement.setAttribute("class", mainCssClass);
+		if (styleIndex != 0) {
+			String mainCssClass = styleIndex < styleClasses.length ? styleClasses[styleIndex] : null;
+			tableCell.setCssClass(mainCssClass);
 
 			if (noText) {
 				/*
@@ -550,104 +1027,69 @@ public class XLSXToHTMLConverter {
 			value = builder.toString();
 		}
 
-		Text text = htmlDocFacade.createText(value);
-		tableCellElement.appendChild(text);
+		tableCell.setText(value);
 
-		return isEmpty(value) && (cellStyle.getIndex() == 0);
+		return noText && (styleIndex == 0);
 	}
 
-	protected void processSheetHeader(Element htmlBody, XSSFSheet sheet) {
-		Element h2 = htmlDocFacade.createHeader2();
-		h2.appendChild(htmlDocFacade.createText(sheet.getSheetName()));
-		htmlBody.appendChild(h2);
+	/**
+	 * Formats a numeric value with the data format of the given cell style.
+	 * Both the in-memory and the streaming path go through here, so they
+	 * produce the same text
+	 */
+	protected String formatNumericValue(double value, int styleIndex) {
+		if (numberFormats == null) {
+			return hssfDataFormatter.formatRawCellContents(value, 0, "General", date1904);
+		}
+		if (styleIndex < 0 || styleIndex >= styleFormatIndexes.length) {
+			return numberFormats.format(value, 0, "General");
+		}
+		return numberFormats.format(value, styleFormatIndexes[styleIndex], styleFormatStrings[styleIndex]);
 	}
 
-	protected void processRowNumber(XSSFRow row, Element tableRowNumberCellElement) {
-		tableRowNumberCellElement.setAttribute("class", "rownumber");
-		Text text = htmlDocFacade.createText(getRowName(row));
-		tableRowNumberCellElement.appendChild(text);
+	protected void processSheetHeader(String sheetName) {
+		sink.writeSheetHeader(sheetName);
 	}
 
-	protected void processColumnHeaders(XSSFSheet sheet, int maxSheetColumns, Element table) {
-		Element tableHeader = htmlDocFacade.createTableHeader();
-		table.appendChild(tableHeader);
+	protected void processRowNumber(SheetRow row, HtmlRow.Cell tableRowNumberCell) {
+		tableRowNumberCell.setCssClass("rownumber");
+		tableRowNumberCell.setText(getRowName(row));
+	}
 
-		Element tr = htmlDocFacade.createTableRow();
+	protected void processColumnHeaders(ColumnTable columns, int maxSheetColumns) {
+		HtmlRow tr = new HtmlRow();
 
 		if (isOutputRowNumbers()) {
 			// empty row at left-top corner
-			tr.appendChild(htmlDocFacade.createTableHeaderCell());
+			tr.addHeaderCell();
 		}
 
 		for (int c = 0; c < maxSheetColumns; c++) {
-			if (!isOutputHiddenColumns() && sheet.isColumnHidden(c)) {
+			if (columns.isSkipped(c, isOutputHiddenColumns())) {
 				continue;
 			}
-			Element th = htmlDocFacade.createTableHeaderCell();
-			String text = getColumnName(c);
-			th.appendChild(htmlDocFacade.createText(text));
-			tr.appendChild(th);
+			tr.addHeaderCell().setText(getColumnName(c));
 		}
-		tableHeader.appendChild(tr);
+		sink.writeHeaderRow(tr);
 	}
 
 	/**
 	 * Creates COLGROUP element with width specified for all columns. (Except
 	 * first if <tt>{@link #isOutputRowNumbers()}==true</tt>)
 	 */
-	protected void processColumnWidths(XSSFSheet sheet, int maxSheetColumns, Element table) {
-		// draw COLS after we know max column number
-		Element columnGroup = htmlDocFacade.createTableColumnGroup();
+	protected void processColumnWidths(ColumnTable columns, int maxSheetColumns) {
+		int[] widths = new int[maxSheetColumns + 1];
+		int count = 0;
 		if (isOutputRowNumbers()) {
-			columnGroup.appendChild(htmlDocFacade.createTableColumn());
+			widths[count++] = -1;
 		}
 		for (int c = 0; c < maxSheetColumns; c++) {
-			if (!isOutputHiddenColumns() && sheet.isColumnHidden(c)) {
+			if (columns.isSkipped(c, isOutputHiddenColumns())) {
 				continue;
 			}
-			Element col = htmlDocFacade.createTableColumn();
-			col.setAttribute("width", String.valueOf(getColumnWidth(sheet, c)));
-			columnGroup.appendChild(col);
+			widths[count++] = columns.getWidthPx(c);
 		}
-		table.appendChild(columnGroup);
-	}
-
-	/**
-	 * Creates a map (i.e. two-dimensional array) filled with ranges. Allow fast
-	 * retrieving {@link CellRangeAddress} of any cell, if cell is contained in
-	 * range.
-	 * 
-	 * @see #getMergedRange(CellRangeAddress[][], int, int)
-	 */
-	private static CellRangeAddress[][] buildMergedRangesMap(XSSFSheet sheet) {
-		CellRangeAddress[][] mergedRanges = new CellRangeAddress[1][];
-		for (final CellRangeAddress cellRangeAddress : sheet.getMergedRegions()) {
-			final int requiredHeight = cellRangeAddress.getLastRow() + 1;
-			if (mergedRanges.length < requiredHeight) {
-				CellRangeAddress[][] newArray = new CellRangeAddress[requiredHeight][];
-				System.arraycopy(mergedRanges, 0, newArray, 0, mergedRanges.length);
-				mergedRanges = newArray;
-			}
-			for (int r = cellRangeAddress.getFirstRow(); r <= cellRangeAddress.getLastRow(); r++) {
-				final int requiredWidth = cellRangeAddress.getLastColumn() + 1;
-				CellRangeAddress[] rowMerged = mergedRanges[r];
-				if (rowMerged == null) {
-					rowMerged = new CellRangeAddress[requiredWidth];
-					mergedRanges[r] = rowMerged;
-				} else {
-					final int rowMergedLength = rowMerged.length;
-					if (rowMergedLength < requiredWidth) {
-						final CellRangeAddress[] newRow = new CellRangeAddress[requiredWidth];
-						System.arraycopy(rowMerged, 0, newRow, 0, rowMergedLength);
-						mergedRanges[r] = newRow;
-						rowMerged = newRow;
-					}
-				}
-				Arrays.fill(rowMerged, cellRangeAddress.getFirstColumn(), cellRangeAddress.getLastColumn() + 1,
-						cellRangeAddress);
-			}
-		}
-		return mergedRanges;
+		sink.writeColumnGroup(widths, count);
 	}
 
 	/**
@@ -665,22 +1107,34 @@ public class XLSXToHTMLConverter {
 	 * Generates name for output as row number in case
 	 * <tt>{@link #isOutputRowNumbers()} == true</tt>
 	 */
-	protected String getRowName(XSSFRow row) {
+	protected String getRowName(SheetRow row) {
 		return String.valueOf(row.getRowNum() + 1);
 	}
 
-	private static int getColumnWidth(XSSFSheet sheet, int columnIndex) {
-		int widthUnits = sheet.getColumnWidth(columnIndex);
-		int pixels = (widthUnits / EXCEL_COLUMN_WIDTH_FACTOR) * UNIT_OFFSET_LENGTH;
+	protected static boolean isEmpty(String str) {
+		return str == null || str.length() == 0;
+	}
 
-		int offsetWidthUnits = widthUnits % EXCEL_COLUMN_WIDTH_FACTOR;
-		pixels += Math.round(offsetWidthUnits / ((float) EXCEL_COLUMN_WIDTH_FACTOR / UNIT_OFFSET_LENGTH));
+	/**
+	 * Column properties read from an XSSFSheet
+	 */
+	private static class XSSFSheetColumns implements SheetColumns {
 
-		return pixels;
-	}
+		private final XSSFSheet sheet;
 
-	protected static boolean isEmpty(String str) {
-		return str == null || str.length() == 0;
+		XSSFSheetColumns(XSSFSheet sheet) {
+			this.sheet = sheet;
+		}
+
+		@Override
+		public boolean isColumnHidden(int columnIndex) {
+			return sheet.isColumnHidden(columnIndex);
+		}
+
+		@Override
+		public int getColumnWidth(int columnIndex) {
+			return sheet.getColumnWidth(columnIndex);
+		}
 	}
 
 }
@@ -0,0 +1,263 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * {@link HtmlSink} writing XHTML with StAX. Only the row being written is kept
+ * in memory.
+ * 
+ * The body is written to a temporary file first. The stylesheet goes into
+ * the head, in front of the body, so {@link #endDocument()} writes the head
+ * with every CSS class registered until then and copies the body after it.
+ * Class names follow HtmlDocumentFacade, so the output matches
+ * {@link DomHtmlSink}
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class XhtmlStreamSink implements HtmlSink {
+
+	private static final String XHTML_NAMESPACE = "http://www.w3.org/1999/xhtml";
+
+	private final OutputStream out;
+	// Body of the document until endDocument()
+	private final File bodyFile;
+	private final OutputStream body;
+	private final XMLStreamWriter writer;
+	private final Map<String, Map<String, String>> stylesheet = new LinkedHashMap<String, Map<String, String>>();
+	private final String bodyClass;
+
+	/**
+	 * @param out
+	 *            Stream to write UTF-8 encoded XHTML to. Not closed by the sink
+	 */
+	public XhtmlStreamSink(OutputStream out) {
+		this.out = out;
+		try {
+			bodyFile = File.createTempFile("xhtml", ".tmp");
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to create XHTML body file", e);
+		}
+		bodyFile.deleteOnExit();
+		try {
+			body = new BufferedOutputStream(new FileOutputStream(bodyFile));
+			writer = XMLOutputFactory.newInstance().createXMLStreamWriter(body, "UTF-8");
+		} catch (IOException e) {
+			bodyFile.delete();
+			throw new IllegalStateException("Unable to create XHTML writer", e);
+		} catch (XMLStreamException e) {
+			bodyFile.delete();
+			throw new IllegalStateException("Unable to create XHTML writer", e);
+		}
+		bodyClass = getOrCreateCssClass("b", "white-space-collapsing:preserve;");
+	}
+
+	@Override
+	public String getOrCreateCssClass(String classNamePrefix, String style) {
+		Map<String, String> styleToClassName = stylesheet.get(classNamePrefix);
+		if (styleToClassName == null) {
+			styleToClassName = new LinkedHashMap<String, String>(1);
+			stylesheet.put(classNamePrefix, styleToClassName);
+		}
+		String knownClass = styleToClassName.get(style);
+		if (knownClass != null) {
+			return knownClass;
+		}
+		String newClassName = classNamePrefix + (styleToClassName.size() + 1);
+		styleToClassName.put(style, newClassName);
+		return newClassName;
+	}
+
+	@Override
+	public boolean requiresColumnsFirst() {
+		return true;
+	}
+
+	@Override
+	public void startDocument() {
+		try {
+			writer.writeStartElement("body");
+			writer.writeAttribute("class", bodyClass);
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write XHTML", e);
+		}
+	}
+
+	@Override
+	public void writeSheetHeader(String sheetName) {
+		try {
+			writer.writeStartElement("h2");
+			writer.writeCharacters(sheetName);
+			writer.writeEndElement();
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write XHTML", e);
+		}
+	}
+
+	@Override
+	public void startTable(String cssClass) {
+		try {
+			writer.writeStartElement("table");
+			writer.writeAttribute("class", cssClass);
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write XHTML", e);
+		}
+	}
+
+	@Override
+	public void writeColumnGroup(int[] widths, int count) {
+		try {
+			writer.writeStartElement("colgroup");
+			for (int c = 0; c < count; c++) {
+				writer.writeStartElement("col");
+				if (widths[c] >= 0) {
+					writer.writeAttribute("width", String.valueOf(widths[c]));
+				}
+				writer.writeEndElement();
+			}
+			writer.writeEndElement();
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write XHTML", e);
+		}
+	}
+
+	@Override
+	public void writeHeaderRow(HtmlRow row) {
+		try {
+			writer.writeStartElement("thead");
+			writer.writeStartElement("tr");
+			writeCells(row);
+			writer.writeEndElement();
+			writer.writeEndElement();
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write XHTML", e);
+		}
+	}
+
+	@Override
+	public void startTableBody() {
+		try {
+			writer.writeStartElement("tbody");
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write XHTML", e);
+		}
+	}
+
+	@Override
+	public void writeRow(String classNamePrefix, String style, HtmlRow row) {
+		try {
+			writer.writeStartElement("tr");
+			writer.writeAttribute("class", getOrCreateCssClass(classNamePrefix, style));
+			writeCells(row);
+			writer.writeEndElement();
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write XHTML", e);
+		}
+	}
+
+	private void writeCells(HtmlRow row) throws XMLStreamException {
+		for (int i = 0; i < row.size(); i++) {
+			HtmlRow.Cell cell = row.get(i);
+			writer.writeStartElement(cell.isHeader() ? "th" : "td");
+			if (cell.getColSpan() != 1) {
+				writer.writeAttribute("colspan", String.valueOf(cell.getColSpan()));
+			}
+			if (cell.getRowSpan() != 1) {
+				writer.writeAttribute("rowspan", String.valueOf(cell.getRowSpan()));
+			}
+			if (cell.getCssClass() != null) {
+				writer.writeAttribute("class", cell.getCssClass());
+			}
+			if (cell.getText() != null) {
+				writer.writeCharacters(cell.getText());
+			}
+			writer.writeEndElement();
+		}
+	}
+
+	@Override
+	public void endTable() {
+		try {
+			// tbody and table
+			writer.writeEndElement();
+			writer.writeEndElement();
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write XHTML", e);
+		}
+	}
+
+	@Override
+	public void endDocument() {
+		StringBuilder css = new StringBuilder();
+		for (Map<String, String> styleToClassName : stylesheet.values()) {
+			for (Map.Entry<String, String> entry : styleToClassName.entrySet()) {
+				css.append('.').append(entry.getValue()).append('{').append(entry.getKey()).append("}\n");
+			}
+		}
+		try {
+			// body
+			writer.writeEndElement();
+			writer.flush();
+			writer.close();
+			body.close();
+
+			XMLStreamWriter document = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+			document.writeStartDocument("UTF-8", "1.0");
+			document.writeStartElement("html");
+			document.writeDefaultNamespace(XHTML_NAMESPACE);
+			document.writeStartElement("head");
+			document.writeStartElement("style");
+			document.writeAttribute("type", "text/css");
+			document.writeCharacters(css.toString());
+			document.writeEndElement();
+			document.writeEndElement();
+			document.flush();
+			Files.copy(bodyFile.toPath(), out);
+			// html
+			document.writeEndElement();
+			document.writeEndDocument();
+			document.flush();
+			document.close();
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Unable to write XHTML", e);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to write XHTML", e);
+		} finally {
+			bodyFile.delete();
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package docstopdf.bench;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * End to end conversions through the public Converter methods, file to
+ * file. Sample time mode reports latency percentiles; run with -prof gc for
+ * the allocation rate
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+@BenchmarkMode({ Mode.SampleTime, Mode.Throughput })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class ConversionBenchmark {
+
+	private static final MethodHandle XLSX_TO_PDF = Targets.method("Converter", "xlsxToPDF", String.class,
+			String.class, boolean.class, boolean.class);
+	private static final MethodHandle XLSX_TO_PDF_STREAMING = Targets.method("Converter", "xlsxToPDF",
+			String.class, String.class, boolean.class, boolean.class, boolean.class, int.class);
+	private static final MethodHandle XLSX_TO_PDF_PARALLEL = Targets.method("Converter", "xlsxToPDFParallel",
+			String.class, String.class, boolean.class, boolean.class, int.class);
+	private static final MethodHandle XLS_TO_PDF = Targets.method("Converter", "xlsToPDF", String.class,
+			String.class, boolean.class, boolean.class, boolean.class);
+	private static final MethodHandle PPTX_TO_PDF = Targets.method("Converter", "pptxToPDF", String.class,
+			String.class, Targets.type("SlideRenderMode"), int.class);
+	private static final MethodHandle DOCX_TO_PDF = Targets.method("Converter", "docxToPDF", String.class,
+			String.class, String.class);
+
+	/**
+	 * Output file of one benchmark, overwritten by every invocation
+	 */
+	static String output(String name) {
+		return new File(Fixtures.dir(), "out-" + name + ".pdf").getPath();
+	}
+
+	@State(Scope.Benchmark)
+	public static class XlsxState {
+
+		@Param({ Fixtures.TALL_XLSX, Fixtures.WIDE_XLSX, Fixtures.STYLED_XLSX })
+		public String fixture;
+
+		/**
+		 * DOM: XSSFWorkbook and one DOM document. STREAMING: event API
+		 * reader. CHUNKED: streaming, laid out 5000 rows at a time.
+		 * PARALLEL: streaming, sheets on all cores
+		 */
+		@Param({ "DOM", "STREAMING", "CHUNKED", "PARALLEL" })
+		public String path;
+
+		String in;
+		String out;
+
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+			in = Fixtures.get(fixture).getPath();
+			out = output("xlsx-" + path);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class XlsState {
+
+		@Param({ "false", "true" })
+		public boolean streaming;
+
+		String in;
+		String out;
+
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+			in = Fixtures.get(Fixtures.TALL_XLS).getPath();
+			out = output("xls-" + streaming);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class PptxState {
+
+		@Param({ Fixtures.MANY_SLIDES_PPTX, Fixtures.IMAGE_SLIDES_PPTX })
+		public String fixture;
+
+		@Param({ "PNG", "FLATE", "JPEG", "VECTOR" })
+		public String mode;
+
+		@Param({ "1", "4" })
+		public int threads;
+
+		String in;
+		String out;
+		Object renderMode;
+
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+			in = Fixtures.get(fixture).getPath();
+			out = output("pptx-" + mode + "-" + threads);
+			renderMode = Enum.valueOf(Targets.type("SlideRenderMode").asSubclass(Enum.class), mode);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class DocxState {
+
+		String in;
+		String out;
+
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+			in = Fixtures.get(Fixtures.FIELDS_DOCX).getPath();
+			out = output("docx");
+		}
+	}
+
+	@Benchmark
+	public void xlsxToPDF(XlsxState state) throws Throwable {
+		if ("DOM".equals(state.path)) {
+			XLSX_TO_PDF.invokeExact((Object) state.in, (Object) state.out, true, true);
+		} else if ("STREAMING".equals(state.path)) {
+			XLSX_TO_PDF_STREAMING.invokeExact((Object) state.in, (Object) state.out, true, true, true, 0);
+		} else if ("CHUNKED".equals(state.path)) {
+			XLSX_TO_PDF_STREAMING.invokeExact((Object) state.in, (Object) state.out, true, true, true, 5000);
+		} else {
+			XLSX_TO_PDF_PARALLEL.invokeExact((Object) state.in, (Object) state.out, true, true,
+					Runtime.getRuntime().availableProcessors());
+		}
+	}
+
+	@Benchmark
+	public void xlsToPDF(XlsState state) throws Throwable {
+		XLS_TO_PDF.invokeExact((Object) state.in, (Object) state.out, true, true, state.streaming);
+	}
+
+	@Benchmark
+	public void pptxToPDF(PptxState state) throws Throwable {
+		PPTX_TO_PDF.invokeExact((Object) state.in, (Object) state.out, state.renderMode, state.threads);
+	}
+
+	@Benchmark
+	public void docxToPDF(DocxState state) throws Throwable {
+		DOCX_TO_PDF.invokeExact((Object) state.in, (Object) state.out, (Object) null);
+	}
+}
@@ -0,0 +1,229 @@
+package docstopdf.bench;
+
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.lowagie.text.pdf.PdfDictionary;
+import com.lowagie.text.pdf.PdfName;
+import com.lowagie.text.pdf.PdfReader;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Stress check for concurrent docx conversions. Every document is set in a
+ * different installed font and converted with the font of the next document
+ * as its main font, which is mapped to Arial Unicode MS. Converted alone, a
+ * document embeds its own font. Converted many times at once on a thread
+ * pool, a document that picks up the main font mapping of another
+ * conversion loses its font to Arial Unicode MS, which makes the check
+ * fail, as does a failed conversion or any other change of fonts.
+ * 
+ * Arguments: number of threads (default 8) and rounds (default 5). Exits
+ * with status 1 on any mismatch or failure, 2 if fewer than two of the
+ * fonts are installed
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+public class DocxConcurrencyStress {
+
+	private static final MethodHandle DOCX_TO_PDF = Targets.method("Converter", "docxToPDF", String.class,
+			String.class, String.class);
+
+	// Installed fonts the converter registers and does not substitute
+	private static final List<String> CANDIDATE_FONTS = Arrays.asList("Courier New", "Georgia", "Verdana",
+			"Tahoma", "Trebuchet MS", "Impact", "Comic Sans MS", "Palatino Linotype", "Lucida Console",
+			"Lucida Sans Unicode");
+
+	private static final int MAX_DOCUMENTS = 8;
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		final List<String> documentFonts = installedFonts();
+		final int documents = documentFonts.size();
+		if (documents < 2) {
+			System.err.println("Need at least two of " + CANDIDATE_FONTS + " installed, found " + documentFonts);
+			System.exit(2);
+		}
+
+		File dir = new File(Fixtures.dir(), "docx-stress");
+		dir.mkdirs();
+		final String[] inputs = new String[documents];
+		final String[] mainFonts = new String[documents];
+		final List<Set<String>> expected = new ArrayList<Set<String>>();
+		for (int d = 0; d < documents; d++) {
+			// Not used by this document, but by the next one
+			mainFonts[d] = documentFonts.get((d + 1) % documents);
+			File input = new File(dir, "main-font-" + d + ".docx");
+			Fixtures.mainFontDocx(input, documentFonts.get(d), d);
+			inputs[d] = input.getPath();
+			String reference = new File(dir, "reference-" + d + ".pdf").getPath();
+			convert(inputs[d], reference, mainFonts[d]);
+			Set<String> fonts = fonts(reference);
+			if (!embeds(fonts, documentFonts.get(d))) {
+				System.err.println(reference + ": " + documentFonts.get(d) + " not embedded, fonts " + fonts);
+				System.exit(1);
+			}
+			expected.add(fonts);
+		}
+
+		// Every document several times, in random order
+		List<Integer> jobs = new ArrayList<Integer>();
+		for (int r = 0; r < rounds; r++) {
+			for (int d = 0; d < documents; d++) {
+				jobs.add(d);
+			}
+		}
+		Collections.shuffle(jobs, new Random(rounds));
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		try {
+			for (int j = 0; j < jobs.size(); j++) {
+				final int d = jobs.get(j);
+				final String output = new File(dir, "concurrent-" + j + ".pdf").getPath();
+				results.add(pool.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						convert(inputs[d], output, mainFonts[d]);
+						Set<String> fonts = fonts(output);
+						if (!embeds(fonts, documentFonts.get(d))) {
+							return output + ": " + documentFonts.get(d) + " not embedded, fonts " + fonts;
+						}
+						if (!fonts.equals(expected.get(d))) {
+							return output + ": fonts " + fonts + ", converted alone " + expected.get(d);
+						}
+						return null;
+					}
+				}));
+			}
+
+			int failed = 0;
+			for (Future<String> result : results) {
+				String failure;
+				try {
+					failure = result.get();
+				} catch (Exception e) {
+					failure = String.valueOf(e.getCause() != null ? e.getCause() : e);
+				}
+				if (failure != null) {
+					System.err.println("Mismatch: " + failure);
+					failed++;
+				}
+			}
+			System.out.println(
+					(jobs.size() - failed) + " of " + jobs.size() + " conversions on " + threads + " threads matched");
+			if (failed > 0) {
+				System.exit(1);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static void convert(String in, String out, String mainFont) throws Exception {
+		try {
+			DOCX_TO_PDF.invokeExact((Object) in, (Object) out, (Object) mainFont);
+		} catch (Throwable t) {
+			if (t instanceof Exception) {
+				throw (Exception) t;
+			}
+			throw Targets.rethrow(t);
+		}
+	}
+
+	/**
+	 * @return the candidate fonts installed on this machine, at most
+	 *         {@link #MAX_DOCUMENTS}
+	 */
+	private static List<String> installedFonts() {
+		Set<String> installed = new TreeSet<String>(
+				Arrays.asList(GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames()));
+		List<String> fonts = new ArrayList<String>();
+		for (String font : CANDIDATE_FONTS) {
+			if (installed.contains(font) && fonts.size() < MAX_DOCUMENTS) {
+				fonts.add(font);
+			}
+		}
+		return fonts;
+	}
+
+	/**
+	 * @return true if one of the PDF font names is the PostScript name of the
+	 *         family, e.g. CourierNewPSMT for Courier New
+	 */
+	static boolean embeds(Set<String> pdfFonts, String family) {
+		String prefix = family.replace(" ", "");
+		for (String font : pdfFonts) {
+			if (font.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return base names of the fonts used on the pages of a PDF, without
+	 *         the subset prefix
+	 */
+	static Set<String> fonts(String pdf) throws Exception {
+		Set<String> fonts = new TreeSet<String>();
+		PdfReader reader = new PdfReader(pdf);
+		try {
+			for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+				PdfDictionary resources = reader.getPageN(i).getAsDict(PdfName.RESOURCES);
+				PdfDictionary pageFonts = resources != null ? resources.getAsDict(PdfName.FONT) : null;
+				if (pageFonts == null) {
+					continue;
+				}
+				for (Object key : pageFonts.getKeys()) {
+					PdfDictionary font = pageFonts.getAsDict((PdfName) key);
+					PdfName baseFont = font != null ? font.getAsName(PdfName.BASEFONT) : null;
+					if (baseFont != null) {
+						String name = PdfName.decodeName(baseFont.toString());
+						fonts.add(name.substring(name.indexOf('+') + 1));
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return fonts;
+	}
+}
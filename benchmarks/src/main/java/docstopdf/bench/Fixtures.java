@@ -0,0 +1,371 @@
+package docstopdf.bench;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.sl.usermodel.PictureData.PictureType;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFPictureData;
+import org.apache.poi.xslf.usermodel.XSLFPictureShape;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.poi.xslf.usermodel.XSLFTextBox;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.docx4j.XmlUtils;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Input files for the benchmarks, generated from fixed seeds so every run
+ * converts the same bytes. Files are written once into a directory and
+ * reused by later trials
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+final class Fixtures {
+
+	/** 100000 rows of 10 numeric cells: one million numeric cells */
+	static final String TALL_XLSX = "tall.xlsx";
+	/** 200 rows of 1000 text and number cells, with merged regions */
+	static final String WIDE_XLSX = "wide.xlsx";
+	/** 2000 rows, every cell with its own border, alignment and font */
+	static final String STYLED_XLSX = "styled.xlsx";
+	/** 20000 rows of 10 numeric and text cells, in the 97-2003 format */
+	static final String TALL_XLS = "tall.xls";
+	/** 200 slides of text */
+	static final String MANY_SLIDES_PPTX = "slides.pptx";
+	/** 20 slides, each with a large photo-like picture */
+	static final String IMAGE_SLIDES_PPTX = "images.pptx";
+	/** 300 paragraphs in several fonts, with page and date fields */
+	static final String FIELDS_DOCX = "fields.docx";
+
+	private static final long SEED = 20170801L;
+
+	private static final String[] FONTS = { "Arial", "Times New Roman", "Calibri", "Courier New" };
+
+	private Fixtures() {
+	}
+
+	/**
+	 * @return directory of the fixtures, from the system property
+	 *         docstopdf.bench.dir or a directory in java.io.tmpdir
+	 */
+	static File dir() {
+		File dir = new File(System.getProperty("docstopdf.bench.dir",
+				new File(System.getProperty("java.io.tmpdir"), "docstopdf-bench").getPath()));
+		dir.mkdirs();
+		return dir;
+	}
+
+	/**
+	 * @return the fixture file, generated if missing
+	 */
+	static synchronized File get(String name) throws Exception {
+		File file = new File(dir(), name);
+		if (file.isFile()) {
+			return file;
+		}
+		File tmp = new File(dir(), name + ".tmp");
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+		try {
+			if (TALL_XLSX.equals(name)) {
+				tallXlsx(out);
+			} else if (WIDE_XLSX.equals(name)) {
+				wideXlsx(out);
+			} else if (STYLED_XLSX.equals(name)) {
+				styledXlsx(out);
+			} else if (TALL_XLS.equals(name)) {
+				tallXls(out);
+			} else if (MANY_SLIDES_PPTX.equals(name)) {
+				manySlidesPptx(out);
+			} else if (IMAGE_SLIDES_PPTX.equals(name)) {
+				imageSlidesPptx(out);
+			} else if (FIELDS_DOCX.equals(name)) {
+				fieldsDocx(out);
+			} else {
+				throw new IllegalArgumentException("Unknown fixture: " + name);
+			}
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file)) {
+			throw new IOException("Can not rename " + tmp + " to " + file);
+		}
+		return file;
+	}
+
+	private static void tallXlsx(OutputStream out) throws IOException {
+		// Rows are flushed to disk while writing, 1M cells do not fit a
+		// default heap as XSSF objects
+		SXSSFWorkbook workbook = new SXSSFWorkbook(1000);
+		try {
+			Random random = new Random(SEED);
+			CellStyle integer = workbook.createCellStyle();
+			integer.setDataFormat(workbook.createDataFormat().getFormat("0"));
+			CellStyle decimal = workbook.createCellStyle();
+			decimal.setDataFormat(workbook.createDataFormat().getFormat("#,##0.00"));
+			Sheet sheet = workbook.createSheet("Numbers");
+			for (int r = 0; r < 100000; r++) {
+				Row row = sheet.createRow(r);
+				for (int c = 0; c < 10; c++) {
+					Cell cell = row.createCell(c);
+					if (c < 6) {
+						// General and "0" formatted whole numbers, the fast path
+						cell.setCellValue(random.nextInt(1000000));
+						if (c >= 3) {
+							cell.setCellStyle(integer);
+						}
+					} else {
+						cell.setCellValue(random.nextDouble() * 10000);
+						cell.setCellStyle(decimal);
+					}
+				}
+			}
+			workbook.write(out);
+		} finally {
+			workbook.dispose();
+			workbook.close();
+		}
+	}
+
+	private static void wideXlsx(OutputStream out) throws IOException {
+		XSSFWorkbook workbook = new XSSFWorkbook();
+		try {
+			Random random = new Random(SEED);
+			Sheet sheet = workbook.createSheet("Wide");
+			for (int r = 0; r < 200; r++) {
+				Row row = sheet.createRow(r);
+				for (int c = 0; c < 1000; c++) {
+					if (c % 2 == 0) {
+						row.createCell(c).setCellValue("R" + r + "C" + c);
+					} else {
+						row.createCell(c).setCellValue(random.nextInt(100000));
+					}
+				}
+			}
+			for (int c = 0; c < 1000; c++) {
+				sheet.setColumnWidth(c, 2048 + (c % 7) * 256);
+			}
+			for (int r = 0; r < 200; r += 10) {
+				for (int c = 0; c < 1000; c += 50) {
+					sheet.addMergedRegion(new CellRangeAddress(r, r + 1, c, c + 2));
+				}
+			}
+			workbook.write(out);
+		} finally {
+			workbook.close();
+		}
+	}
+
+	private static void styledXlsx(OutputStream out) throws IOException {
+		XSSFWorkbook workbook = new XSSFWorkbook();
+		try {
+			styledSheet(workbook, 2000, 20);
+			workbook.write(out);
+		} finally {
+			workbook.close();
+		}
+	}
+
+	/**
+	 * Fills a sheet whose cells use many distinct cell styles
+	 */
+	static void styledSheet(Workbook workbook, int rows, int columns) {
+		Random random = new Random(SEED);
+		BorderStyle[] borders = BorderStyle.values();
+		HorizontalAlignment[] alignments = HorizontalAlignment.values();
+		CellStyle[] styles = new CellStyle[Math.min(2000, rows * columns)];
+		for (int i = 0; i < styles.length; i++) {
+			Font font = workbook.createFont();
+			font.setFontName(FONTS[i % FONTS.length]);
+			font.setFontHeightInPoints((short) (8 + i % 12));
+			font.setBold(i % 3 == 0);
+			font.setItalic(i % 5 == 0);
+			CellStyle style = workbook.createCellStyle();
+			style.setFont(font);
+			style.setAlignment(alignments[i % alignments.length]);
+			style.setBorderTop(borders[i % borders.length]);
+			style.setBorderRight(borders[(i / 2) % borders.length]);
+			style.setBorderBottom(borders[(i / 3) % borders.length]);
+			style.setBorderLeft(borders[(i / 5) % borders.length]);
+			styles[i] = style;
+		}
+		Sheet sheet = workbook.createSheet("Styled");
+		for (int r = 0; r < rows; r++) {
+			Row row = sheet.createRow(r);
+			for (int c = 0; c < columns; c++) {
+				Cell cell = row.createCell(c);
+				cell.setCellValue(r % 2 == 0 ? "Text " + random.nextInt(1000) : String.valueOf(random.nextDouble()));
+				cell.setCellStyle(styles[random.nextInt(styles.length)]);
+			}
+		}
+	}
+
+	private static void tallXls(OutputStream out) throws IOException {
+		HSSFWorkbook workbook = new HSSFWorkbook();
+		try {
+			Random random = new Random(SEED);
+			Sheet sheet = workbook.createSheet("Numbers");
+			for (int r = 0; r < 20000; r++) {
+				Row row = sheet.createRow(r);
+				for (int c = 0; c < 10; c++) {
+					if (c == 0) {
+						row.createCell(c).setCellValue("Item " + r);
+					} else {
+						row.createCell(c).setCellValue(random.nextInt(1000000));
+					}
+				}
+			}
+			workbook.write(out);
+		} finally {
+			workbook.close();
+		}
+	}
+
+	private static void manySlidesPptx(OutputStream out) throws IOException {
+		XMLSlideShow ppt = new XMLSlideShow();
+		try {
+			for (int s = 0; s < 200; s++) {
+				XSLFSlide slide = ppt.createSlide();
+				XSLFTextBox title = slide.createTextBox();
+				title.setAnchor(new Rectangle(50, 30, 620, 60));
+				title.setText("Slide " + (s + 1));
+				XSLFTextBox text = slide.createTextBox();
+				text.setAnchor(new Rectangle(50, 120, 620, 380));
+				StringBuilder body = new StringBuilder();
+				for (int l = 0; l < 8; l++) {
+					body.append("Point ").append(l + 1).append(" of slide ").append(s + 1).append('\n');
+				}
+				text.setText(body.toString());
+				text.setFillColor(new Color(230, 240, 250));
+			}
+			ppt.write(out);
+		} finally {
+			ppt.close();
+		}
+	}
+
+	private static void imageSlidesPptx(OutputStream out) throws IOException {
+		XMLSlideShow ppt = new XMLSlideShow();
+		try {
+			Random random = new Random(SEED);
+			for (int s = 0; s < 20; s++) {
+				XSLFPictureData picture = ppt.addPicture(photo(random, 2000, 1500), PictureType.PNG);
+				XSLFSlide slide = ppt.createSlide();
+				XSLFPictureShape shape = slide.createPicture(picture);
+				shape.setAnchor(new Rectangle(0, 0, 720, 540));
+			}
+			ppt.write(out);
+		} finally {
+			ppt.close();
+		}
+	}
+
+	/**
+	 * PNG of {@link #photoImage(Random, int, int)}, which compresses about as
+	 * badly as a photo
+	 */
+	static byte[] photo(Random random, int width, int height) throws IOException {
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(photoImage(random, width, height), "png", png);
+		return png.toByteArray();
+	}
+
+	/**
+	 * Image of smooth gradients with noise, in the pixel format slides are
+	 * drawn into
+	 */
+	static BufferedImage photoImage(Random random, int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int r = (x * 255 / width + random.nextInt(32)) & 0xFF;
+				int g = (y * 255 / height + random.nextInt(32)) & 0xFF;
+				int b = ((x + y) * 127 / (width + height) + random.nextInt(32)) & 0xFF;
+				image.setRGB(x, y, (r << 16) | (g << 8) | b);
+			}
+		}
+		return image;
+	}
+
+	private static void fieldsDocx(OutputStream out) throws Exception {
+		WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+		MainDocumentPart document = wordMLPackage.getMainDocumentPart();
+		for (int p = 0; p < 300; p++) {
+			String font = FONTS[p % FONTS.length];
+			String field = p % 2 == 0 ? " PAGE " : " DATE \\@ &quot;yyyy-MM-dd&quot; ";
+			String xml = "<w:p xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\">"
+					+ "<w:r><w:rPr><w:rFonts w:ascii=\"" + font + "\" w:hAnsi=\"" + font + "\"/>"
+					+ (p % 3 == 0 ? "<w:b/>" : "") + "<w:sz w:val=\"" + (18 + p % 10) + "\"/></w:rPr>"
+					+ "<w:t xml:space=\"preserve\">Paragraph " + (p + 1) + " set in " + font + ", field: </w:t></w:r>"
+					+ "<w:fldSimple w:instr=\"" + field + "\"><w:r><w:t>1</w:t></w:r></w:fldSimple></w:p>";
+			document.addObject(XmlUtils.unmarshalString(xml));
+		}
+		wordMLPackage.save(out);
+	}
+
+	/**
+	 * Writes a docx whose body is set in mainFont, with every fifth paragraph
+	 * in one of the common fonts
+	 * 
+	 * @param variant
+	 *            Picks the common font
+	 */
+	static void mainFontDocx(File file, String mainFont, int variant) throws Exception {
+		WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+		MainDocumentPart document = wordMLPackage.getMainDocumentPart();
+		for (int p = 0; p < 60; p++) {
+			String font = p % 5 == 4 ? FONTS[variant % FONTS.length] : mainFont;
+			String xml = "<w:p xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\">"
+					+ "<w:r><w:rPr><w:rFonts w:ascii=\"" + font + "\" w:hAnsi=\"" + font + "\"/></w:rPr>"
+					+ "<w:t xml:space=\"preserve\">Paragraph " + (p + 1) + " set in " + font + "</w:t></w:r></w:p>";
+			document.addObject(XmlUtils.unmarshalString(xml));
+		}
+		wordMLPackage.save(file);
+	}
+}
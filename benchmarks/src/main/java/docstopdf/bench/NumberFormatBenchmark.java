@@ -0,0 +1,126 @@
+package docstopdf.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.hssf.usermodel.HSSFDataFormatter;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Number formatting of a one million numeric cell sheet, through
+ * NumberFormatCache and straight through the DataFormatter as before the
+ * cache. Both benchmarks format the same values with the same formats: 30%
+ * General integers, 30% integers in "0" and 40% decimals in "#,##0.00".
+ * Scores are per cell
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class NumberFormatBenchmark {
+
+	private static final int NUMERIC_CELLS = 1000000;
+
+	// Built-in format indexes of the three formats
+	private static final int[] FORMAT_INDEXES = { 0, 1, 4 };
+	private static final String[] FORMAT_STRINGS = { "General", "0", "#,##0.00" };
+
+	private static final MethodHandle NEW_NUMBER_FORMAT_CACHE = Targets.constructor("NumberFormatCache",
+			DataFormatter.class, boolean.class);
+	private static final MethodHandle FORMAT = Targets.method("NumberFormatCache", "format", double.class,
+			int.class, String.class);
+
+	private HSSFDataFormatter formatter;
+	private Object cache;
+
+	private double[] numbers;
+	private int[] formatIndexes;
+	private String[] formatStrings;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		Random random = new Random(1);
+		numbers = new double[NUMERIC_CELLS];
+		formatIndexes = new int[NUMERIC_CELLS];
+		formatStrings = new String[NUMERIC_CELLS];
+		for (int i = 0; i < NUMERIC_CELLS; i++) {
+			int format = i % 10 < 3 ? 0 : i % 10 < 6 ? 1 : 2;
+			numbers[i] = format < 2 ? random.nextInt(1000000) : random.nextDouble() * 10000;
+			formatIndexes[i] = FORMAT_INDEXES[format];
+			formatStrings[i] = FORMAT_STRINGS[format];
+		}
+
+		formatter = new HSSFDataFormatter();
+		cache = NEW_NUMBER_FORMAT_CACHE.invoke(new HSSFDataFormatter(), false);
+
+		// Only compare speed if both give the same text
+		for (int i = 0; i < NUMERIC_CELLS; i += 97) {
+			String cached = (String) FORMAT.invoke(cache, numbers[i], formatIndexes[i], formatStrings[i]);
+			String plain = formatter.formatRawCellContents(numbers[i], formatIndexes[i], formatStrings[i], false);
+			if (!plain.equals(cached)) {
+				throw new IllegalStateException(
+						"Cache formats " + numbers[i] + " as " + cached + ", DataFormatter as " + plain);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUMERIC_CELLS)
+	public void numberFormatCache(Blackhole blackhole) throws Throwable {
+		for (int i = 0; i < NUMERIC_CELLS; i++) {
+			blackhole.consume(
+					(Object) FORMAT.invokeExact(cache, numbers[i], formatIndexes[i], (Object) formatStrings[i]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUMERIC_CELLS)
+	public void dataFormatter(Blackhole blackhole) {
+		for (int i = 0; i < NUMERIC_CELLS; i++) {
+			blackhole.consume(formatter.formatRawCellContents(numbers[i], formatIndexes[i], formatStrings[i], false));
+		}
+	}
+}
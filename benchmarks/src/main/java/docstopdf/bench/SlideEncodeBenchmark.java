@@ -0,0 +1,117 @@
+package docstopdf.bench;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.lang.invoke.MethodHandle;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Encoding of one drawn slide into a PDF image, per render mode, for a text
+ * slide and a photo slide. The vector mode does not encode and is not
+ * covered
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+@BenchmarkMode({ Mode.SampleTime, Mode.Throughput })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SlideEncodeBenchmark {
+
+	// 720 x 540 points drawn at twice the resolution
+	private static final int WIDTH = 1440;
+	private static final int HEIGHT = 1080;
+
+	private static final Class<?> SLIDE_RENDER_MODE = Targets.type("SlideRenderMode");
+
+	private static final MethodHandle NEW_CONVERTER = Targets.constructor("PPTXToPDFConverter");
+	private static final MethodHandle SET_RENDER_MODE = Targets.method("PPTXToPDFConverter", "setRenderMode",
+			SLIDE_RENDER_MODE);
+	private static final MethodHandle ENCODE_SLIDE = Targets.method("PPTXToPDFConverter", "encodeSlide",
+			BufferedImage.class);
+
+	@Param({ "PNG", "FLATE", "JPEG" })
+	public String mode;
+
+	@Param({ "text", "photo" })
+	public String slide;
+
+	private Object converter;
+	private BufferedImage image;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		converter = NEW_CONVERTER.invoke();
+		SET_RENDER_MODE.invoke(converter, Enum.valueOf(SLIDE_RENDER_MODE.asSubclass(Enum.class), mode));
+		image = "photo".equals(slide) ? Fixtures.photoImage(new Random(1), WIDTH, HEIGHT) : textSlide();
+	}
+
+	/**
+	 * Mostly white slide with a title and a few lines of text
+	 */
+	private static BufferedImage textSlide() {
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2d = image.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g2d.setPaint(Color.white);
+		g2d.fillRect(0, 0, WIDTH, HEIGHT);
+		g2d.setPaint(Color.darkGray);
+		g2d.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 64));
+		g2d.drawString("Quarterly results", 100, 150);
+		g2d.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 36));
+		for (int l = 0; l < 10; l++) {
+			g2d.drawString("Point " + (l + 1) + ": numbers went up and to the right", 120, 280 + l * 70);
+		}
+		g2d.dispose();
+		return image;
+	}
+
+	@Benchmark
+	public Object encodeSlide() throws Throwable {
+		return (Object) ENCODE_SLIDE.invokeExact(converter, (Object) image);
+	}
+}
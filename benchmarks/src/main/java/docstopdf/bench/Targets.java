@@ -0,0 +1,118 @@
+package docstopdf.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Looks up the converter classes for the benchmarks.
+ * 
+ * The converter classes are in the default package, which can not be
+ * imported, and JMH does not accept benchmarks in the default package. The
+ * benchmarks therefore reach the converter through method handles. Handles
+ * kept in static final fields are constants to the JIT, so calling through
+ * them costs about as much as a direct call
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+final class Targets {
+
+	private Targets() {
+	}
+
+	static Class<?> type(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("Converter classes are not on the class path: " + name, e);
+		}
+	}
+
+	/**
+	 * Handle of a method of any visibility, with all reference types of the
+	 * converter erased to Object so it can be invoked exactly
+	 * 
+	 * @param owner
+	 *            Name of the declaring class
+	 * @param name
+	 *            Method name
+	 * @param parameterTypes
+	 *            Parameter types
+	 */
+	static MethodHandle method(String owner, String name, Class<?>... parameterTypes) {
+		try {
+			Method method = type(owner).getDeclaredMethod(name, parameterTypes);
+			method.setAccessible(true);
+			return erase(MethodHandles.lookup().unreflect(method));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Handle of a constructor of any visibility, see
+	 * {@link #method(String, String, Class...)}
+	 */
+	static MethodHandle constructor(String owner, Class<?>... parameterTypes) {
+		try {
+			Constructor<?> constructor = type(owner).getDeclaredConstructor(parameterTypes);
+			constructor.setAccessible(true);
+			return erase(MethodHandles.lookup().unreflectConstructor(constructor));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MethodHandle erase(MethodHandle handle) {
+		MethodType type = handle.type();
+		for (int i = 0; i < type.parameterCount(); i++) {
+			if (!type.parameterType(i).isPrimitive()) {
+				type = type.changeParameterType(i, Object.class);
+			}
+		}
+		if (!type.returnType().isPrimitive()) {
+			type = type.changeReturnType(Object.class);
+		}
+		return handle.asType(type);
+	}
+
+	/**
+	 * Rethrows what a handle threw, benchmarks declare Throwable anyway
+	 */
+	static RuntimeException rethrow(Throwable t) {
+		if (t instanceof RuntimeException) {
+			return (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		return new IllegalStateException(t);
+	}
+}
@@ -0,0 +1,285 @@
+package docstopdf.bench;
+
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2017 Sifan YE
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Per cell and per sheet work of the spreadsheet conversion, without
+ * reading or writing files. Scores are per cell, style, lookup or column
+ * 
+ * @author Sifan Ye (sye8 {at} u {dot} rochester {dot} edu)
+ *
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class XlsxHotPathBenchmark {
+
+	private static final int CELLS = 1024;
+	private static final int NUMERIC_CELLS = 1000000;
+	private static final int STYLES = 256;
+	private static final int SHEET_ROWS = 1000;
+	private static final int SHEET_COLUMNS = 200;
+
+	private static final Class<?> SHEET_CELL = Targets.type("SheetCell");
+	private static final Class<?> HTML_ROW = Targets.type("HtmlRow");
+
+	private static final MethodHandle NEW_SINK = Targets.constructor("XhtmlStreamSink", OutputStream.class);
+	private static final MethodHandle NEW_CONVERTER = Targets.constructor("XLSXToHTMLConverter",
+			Targets.type("HtmlSink"));
+	private static final MethodHandle BEGIN_WORKBOOK = Targets.method("XLSXToHTMLConverter", "beginWorkbook",
+			StylesTable.class, boolean.class);
+	private static final MethodHandle PROCESS_CELL = Targets.method("XLSXToHTMLConverter", "processCell",
+			SHEET_CELL, Targets.type("HtmlRow$Cell"), int.class, int.class, float.class);
+	private static final MethodHandle FORMAT_NUMERIC_VALUE = Targets.method("XLSXToHTMLConverter",
+			"formatNumericValue", double.class, int.class);
+	private static final MethodHandle BUILD_STYLE = Targets.method("XLSXToHTMLConverter", "buildStyle",
+			short.class, BorderStyle.class, BorderStyle.class, BorderStyle.class, BorderStyle.class, boolean.class,
+			short.class, boolean.class);
+	private static final MethodHandle COLUMN_WIDTH_IN_PX = Targets.method("XLSXToHTMLConverter",
+			"getColumnWidthInPx", int.class);
+	private static final MethodHandle NEW_MERGED_REGION_INDEX = Targets.constructor("MergedRegionIndex",
+			List.class);
+	private static final MethodHandle GET_MERGED_RANGE = Targets.method("MergedRegionIndex", "getMergedRange",
+			int.class, int.class);
+
+	private static final MethodHandle NEW_SHEET_CELL = Targets.constructor("SheetCell");
+	private static final MethodHandle SET_CELL_TYPE = Targets.method("SheetCell", "setCellType", CellType.class);
+	private static final MethodHandle SET_STRING_VALUE = Targets.method("SheetCell", "setStringValue",
+			String.class);
+	private static final MethodHandle SET_NUMERIC_VALUE = Targets.method("SheetCell", "setNumericValue",
+			double.class);
+	private static final MethodHandle SET_BOOLEAN_VALUE = Targets.method("SheetCell", "setBooleanValue",
+			boolean.class);
+	private static final MethodHandle SET_STYLE_INDEX = Targets.method("SheetCell", "setStyleIndex", int.class);
+	private static final MethodHandle NEW_HTML_ROW = Targets.constructor("HtmlRow");
+	private static final MethodHandle ADD_CELL = Targets.method("HtmlRow", "addCell");
+
+	private XSSFWorkbook workbook;
+	private Object converter;
+	private Object tableCell;
+	private Object[] cells;
+
+	// Numeric cells of the one million cell sheet: General, "0" and "#,##0.00"
+	private double[] numbers;
+	private int[] numberStyles;
+
+	private short[] alignments;
+	private BorderStyle[][] borders;
+	private boolean[] bolds;
+	private short[] fontHeights;
+
+	private int[] widthUnits;
+
+	private List<CellRangeAddress> mergedRegions;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		Random random = new Random(1);
+
+		// Styles of a real workbook, plus the three number formats
+		workbook = new XSSFWorkbook();
+		Fixtures.styledSheet(workbook, 100, 20);
+		XSSFCellStyle integer = workbook.createCellStyle();
+		integer.setDataFormat(workbook.createDataFormat().getFormat("0"));
+		XSSFCellStyle decimal = workbook.createCellStyle();
+		decimal.setDataFormat(workbook.createDataFormat().getFormat("#,##0.00"));
+		int styleCount = workbook.getNumCellStyles();
+
+		converter = NEW_CONVERTER.invoke(NEW_SINK.invoke(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		BEGIN_WORKBOOK.invoke(converter, workbook.getStylesSource(), false);
+		tableCell = ADD_CELL.invoke(NEW_HTML_ROW.invoke());
+
+		cells = new Object[CELLS];
+		for (int i = 0; i < CELLS; i++) {
+			Object cell = NEW_SHEET_CELL.invoke();
+			switch (i % 4) {
+				case 0:
+					SET_CELL_TYPE.invoke(cell, CellType.STRING);
+					SET_STRING_VALUE.invoke(cell, (i % 8 == 0 ? "  indented " : "Text ") + i);
+					break;
+				case 1:
+				case 2:
+					SET_CELL_TYPE.invoke(cell, CellType.NUMERIC);
+					SET_NUMERIC_VALUE.invoke(cell, i % 8 == 1 ? (double) random.nextInt(100000) : random.nextDouble());
+					break;
+				default:
+					SET_CELL_TYPE.invoke(cell, i % 8 == 3 ? CellType.BOOLEAN : CellType.BLANK);
+					SET_BOOLEAN_VALUE.invoke(cell, true);
+					break;
+			}
+			SET_STYLE_INDEX.invoke(cell, random.nextInt(styleCount));
+			cells[i] = cell;
+		}
+
+		numbers = new double[NUMERIC_CELLS];
+		numberStyles = new int[NUMERIC_CELLS];
+		for (int i = 0; i < NUMERIC_CELLS; i++) {
+			switch (i % 10) {
+				case 0:
+				case 1:
+				case 2:
+					numbers[i] = random.nextInt(1000000);
+					numberStyles[i] = 0;
+					break;
+				case 3:
+				case 4:
+				case 5:
+					numbers[i] = random.nextInt(1000000);
+					numberStyles[i] = integer.getIndex();
+					break;
+				default:
+					numbers[i] = random.nextDouble() * 10000;
+					numberStyles[i] = decimal.getIndex();
+					break;
+			}
+		}
+
+		HorizontalAlignment[] alignmentValues = HorizontalAlignment.values();
+		BorderStyle[] borderValues = BorderStyle.values();
+		alignments = new short[STYLES];
+		borders = new BorderStyle[STYLES][4];
+		bolds = new boolean[STYLES];
+		fontHeights = new short[STYLES];
+		for (int i = 0; i < STYLES; i++) {
+			alignments[i] = alignmentValues[random.nextInt(alignmentValues.length)].getCode();
+			for (int b = 0; b < 4; b++) {
+				borders[i][b] = borderValues[random.nextInt(borderValues.length)];
+			}
+			bolds[i] = random.nextBoolean();
+			fontHeights[i] = (short) (8 + random.nextInt(20));
+		}
+
+		widthUnits = new int[SHEET_COLUMNS];
+		for (int i = 0; i < SHEET_COLUMNS; i++) {
+			widthUnits[i] = 256 + random.nextInt(40 * 256);
+		}
+
+		// Blocks of 1 to 3 rows and columns, like merged headers and labels
+		mergedRegions = new ArrayList<CellRangeAddress>();
+		for (int r = 0; r < SHEET_ROWS; r += 5) {
+			for (int c = 0; c < SHEET_COLUMNS; c += 20) {
+				mergedRegions.add(new CellRangeAddress(r, r + random.nextInt(3), c, c + random.nextInt(3)));
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		workbook.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CELLS)
+	public void processCell(Blackhole blackhole) throws Throwable {
+		for (Object cell : cells) {
+			blackhole.consume((boolean) PROCESS_CELL.invokeExact(converter, cell, tableCell, 64, 0, 15f));
+		}
+	}
+
+	/**
+	 * The one million numeric cell sheet, formatted cell by cell
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NUMERIC_CELLS)
+	public void formatNumericValue(Blackhole blackhole) throws Throwable {
+		for (int i = 0; i < NUMERIC_CELLS; i++) {
+			blackhole.consume((Object) FORMAT_NUMERIC_VALUE.invokeExact(converter, numbers[i], numberStyles[i]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STYLES)
+	public void buildStyle(Blackhole blackhole) throws Throwable {
+		for (int i = 0; i < STYLES; i++) {
+			BorderStyle[] b = borders[i];
+			blackhole.consume((Object) BUILD_STYLE.invokeExact(alignments[i], (Object) b[0], (Object) b[1],
+					(Object) b[2], (Object) b[3], bolds[i], fontHeights[i], !bolds[i]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SHEET_COLUMNS)
+	public void getColumnWidthInPx(Blackhole blackhole) throws Throwable {
+		for (int i = 0; i < SHEET_COLUMNS; i++) {
+			blackhole.consume((int) COLUMN_WIDTH_IN_PX.invokeExact(widthUnits[i]));
+		}
+	}
+
+	/**
+	 * Builds the merged region index of a sheet and looks up every cell in
+	 * row order, as the converter does. Replaces the former
+	 * buildMergedRangesMap
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SHEET_ROWS * SHEET_COLUMNS)
+	public void mergedRegionLookup(Blackhole blackhole) throws Throwable {
+		Object index = NEW_MERGED_REGION_INDEX.invokeExact((Object) mergedRegions);
+		for (int r = 0; r < SHEET_ROWS; r++) {
+			for (int c = 0; c < SHEET_COLUMNS; c++) {
+				blackhole.consume((Object) GET_MERGED_RANGE.invokeExact(index, r, c));
+			}
+		}
+	}
+}